@@ -1,10 +1,32 @@
 package com.mind;
 
+import com.azure.core.credential.TokenRequestContext;
+import com.azure.identity.AuthenticationRecord;
+import com.azure.identity.DeviceCodeCredential;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.models.AttachmentCollectionResponse;
 import com.microsoft.graph.models.Message;
-import com.microsoft.graph.models.MessageCollectionResponse;
-import com.microsoft.graph.users.item.messages.item.createreply.CreateReplyPostRequestBody;
+import com.mind.config.AuthRecordStore;
+import com.mind.config.GraphConfig;
+import com.mind.json.JsonWriter;
+import com.mind.mail.AttachmentSpool;
+import com.mind.mail.ConversationThreads;
+import com.mind.mail.Mailbox;
+import com.mind.mail.MailboxFilter;
+import com.mind.mail.MailboxRegistry;
+import com.mind.mail.MessageBatch;
+import com.mind.mail.MessageJson;
+import com.mind.mail.MessageListing;
+import com.mind.metrics.ToolMetrics;
+import com.mind.notify.MailSubscriptions;
+import com.mind.notify.ResourceNotifier;
+import com.mind.writes.Operation;
+import com.mind.writes.WritePipeline;
+import com.mind.search.SearchIndex;
 import io.modelcontextprotocol.server.McpServer;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.server.McpSyncServer;
 import io.modelcontextprotocol.server.McpSyncServerExchange;
 import io.modelcontextprotocol.server.transport.HttpServletStreamableServerTransportProvider;
 import io.modelcontextprotocol.spec.McpSchema;
@@ -13,50 +35,131 @@ import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
 import io.modelcontextprotocol.spec.McpSchema.TextContent;
 import io.modelcontextprotocol.spec.McpSchema.Tool;
 import jakarta.servlet.http.HttpServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @SpringBootApplication
 public class OutlookMcpApplication {
 
+        private static final Logger log = LoggerFactory.getLogger(OutlookMcpApplication.class);
+
+        // Upper bound on body characters returned per message, whatever the caller asks for
+        @Value("${outlook.body.max-length:50000}")
+        private int maxBodyLength;
+
+        // Upper bound on attachment bytes returned per read_attachment call
+        @Value("${outlook.attachments.max-read-bytes:262144}")
+        private int maxAttachmentRead;
+
         public static void main(String[] args) {
                 SpringApplication.run(OutlookMcpApplication.class, args);
         }
 
         @Bean
-        public ServletRegistrationBean<HttpServlet> mcpServlet(GraphServiceClient graphClient) {
+        public ServletRegistrationBean<HttpServlet> mcpServlet(MailboxRegistry mailboxes,
+                        AttachmentSpool attachmentSpool, MailSubscriptions mailSubscriptions, WritePipeline writePipeline,
+                        ToolMetrics toolMetrics) {
                 // Create the server with HTTP Streamable transport
                 HttpServletStreamableServerTransportProvider transport = HttpServletStreamableServerTransportProvider
                                 .builder()
                                 .mcpEndpoint("")
                                 .build();
 
-                McpServer.SyncSpecification<?> serverSpec = McpServer.sync(transport)
+                // Handlers run directly on the (virtual) request thread instead of being
+                // offloaded to a bounded worker pool; Graph concurrency is capped by GraphBulkhead.
+                // Running on the request thread is also what lets handlers see the mailbox bound by MailboxFilter
+                // Wrapped so inbox updates can be sent to the sessions of one mailbox only
+                ResourceNotifier notifier = new ResourceNotifier(transport, mailboxes);
+                McpServer.SyncSpecification<?> serverSpec = McpServer.sync(notifier)
+                                .immediateExecution(true)
                                 .serverInfo("outlook-mcp", "1.0.0")
                                 .capabilities(McpSchema.ServerCapabilities.builder()
                                                 .tools(true)
+                                                .resources(true, true)
                                                 .logging()
                                                 .build());
 
                 // Register tools
-                registerTools(serverSpec, graphClient);
+                registerTools(serverSpec, mailboxes, attachmentSpool, writePipeline, toolMetrics);
+
+                // Recent inbox as a resource, so clients can wait for updates instead of polling
+                serverSpec.resources(new McpServerFeatures.SyncResourceSpecification(
+                                McpSchema.Resource.builder()
+                                                .uri(INBOX_RESOURCE)
+                                                .name("inbox")
+                                                .description("The newest emails in the inbox. Updated when new mail arrives or mail changes")
+                                                .mimeType("application/json")
+                                                .build(),
+                                (exchange, request) -> {
+                                        try {
+                                                MessageListing.Page page = mailboxes.current().listing()
+                                                                .list(INBOX_RESOURCE_SIZE, null, count -> {
+                                                                });
+                                                return new McpSchema.ReadResourceResult(List.of(
+                                                                new McpSchema.TextResourceContents(INBOX_RESOURCE,
+                                                                                "application/json", page.json())));
+                                        } catch (URISyntaxException e) {
+                                                throw new IllegalStateException("Error fetching emails: " + e.getMessage(), e);
+                                        }
+                                }));
 
                 // Build and register the transport servlet
-                serverSpec.build();
+                McpSyncServer server = serverSpec.build();
+
+                // Only sessions of the changed mailbox hear about it; they re-read the resource
+                mailSubscriptions.addChangeListener(mailboxId -> notifier.resourceUpdated(mailboxId, INBOX_RESOURCE));
                 ServletRegistrationBean<HttpServlet> servletBean = new ServletRegistrationBean<>(transport, "/mcp/*");
                 return servletBean;
         }
 
-        private void registerTools(McpServer.SyncSpecification<?> serverSpec, GraphServiceClient graphClient) {
+        @Bean
+        public FilterRegistrationBean<MailboxFilter> mailboxFilter(MailboxRegistry mailboxes) {
+                // Binds every MCP request to its caller's mailbox; handlers pick it up via mailboxes.current()
+                FilterRegistrationBean<MailboxFilter> filterBean = new FilterRegistrationBean<>(
+                                new MailboxFilter(mailboxes));
+                filterBean.addUrlPatterns("/mcp/*");
+                return filterBean;
+        }
+
+        private static final String INBOX_RESOURCE = "outlook://inbox";
+        private static final int INBOX_RESOURCE_SIZE = 50;
+
+        private static final Map<String, Object> BODY_FORMAT_SCHEMA = Map.of(
+                        "type", "string",
+                        "enum", List.of("html", "text"),
+                        "description",
+                        "Return the body as stored (html) or converted to plain text (text, usually far smaller). Default: html");
+
+        private static final Map<String, Object> ASYNC_SCHEMA = Map.of(
+                        "type", "boolean",
+                        "description",
+                        "Return an operation ID right away and apply the change in the background; poll get_operation_status for the outcome. Default: false");
+
+        private static final Map<String, Object> MAX_LENGTH_SCHEMA = Map.of(
+                        "type", "number",
+                        "description",
+                        "Maximum number of body characters to return per email (default and upper bound: server limit)");
+
+        private void registerTools(McpServer.SyncSpecification<?> serverSpec, MailboxRegistry mailboxes,
+                        AttachmentSpool attachmentSpool, WritePipeline writePipeline, ToolMetrics toolMetrics) {
                 serverSpec
                                 // Tool 1: Get recent emails (last week)
                                 .toolCall(new Tool(
@@ -69,7 +172,11 @@ public class OutlookMcpApplication {
                                                                                 "limit", Map.of(
                                                                                                 "type", "number",
                                                                                                 "description",
-                                                                                                "Maximum number of emails to return (default: 10)")),
+                                                                                                "Maximum number of emails to return (default: 100)"),
+                                                                                "cursor", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "Cursor returned by a previous call to continue the listing")),
                                                                 List.of(),
                                                                 Boolean.FALSE,
                                                                 Map.of(),
@@ -77,8 +184,9 @@ public class OutlookMcpApplication {
                                                 null,
                                                 null,
                                                 Map.of()),
-                                                (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                toolMetrics.timed("get_recent_emails", (McpSyncServerExchange exchange, CallToolRequest request) -> {
                                                         try {
+                                                                Mailbox mailbox = mailboxes.current();
                                                                 final int limit = request.arguments()
                                                                                 .containsKey("limit")
                                                                                                 ? ((Number) request
@@ -87,45 +195,38 @@ public class OutlookMcpApplication {
                                                                                                                 .intValue()
                                                                                                 : 100;
 
-                                                                OffsetDateTime oneWeekAgo = OffsetDateTime.now()
-                                                                                .minusWeeks(1);
-                                                                String filterDate = oneWeekAgo.format(
-                                                                                DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+                                                                String cursor = (String) request.arguments()
+                                                                                .get("cursor");
+                                                                Object progressToken = request.meta() != null
+                                                                                ? request.meta().get("progressToken")
+                                                                                : null;
 
-                                                                MessageCollectionResponse messages = graphClient.me()
-                                                                                .messages()
-                                                                                .get(requestConfig -> {
-                                                                                        requestConfig.queryParameters.filter = "receivedDateTime ge "
-                                                                                                        + filterDate;
-                                                                                        requestConfig.queryParameters.top = limit;
-                                                                                        requestConfig.queryParameters.orderby = new String[] {
-                                                                                                        "receivedDateTime DESC" };
-                                                                                        requestConfig.queryParameters.select = new String[] {
-                                                                                                        "id", "subject",
-                                                                                                        "from",
-                                                                                                        "receivedDateTime",
-                                                                                                        "bodyPreview" };
+                                                                MessageListing.Page page = mailbox.listing().list(
+                                                                                limit, cursor, count -> {
+                                                                                        if (progressToken != null) {
+                                                                                                exchange.progressNotification(
+                                                                                                                new McpSchema.ProgressNotification(
+                                                                                                                                progressToken,
+                                                                                                                                count,
+                                                                                                                                (double) limit,
+                                                                                                                                "Fetched " + count
+                                                                                                                                                + " emails"));
+                                                                                        }
                                                                                 });
 
-                                                                List<Message> messageList = messages.getValue();
-                                                                String emailData = messageList.stream()
-                                                                                .map(msg -> String.format(
-                                                                                                "{\"id\":\"%s\",\"subject\":\"%s\",\"from\":\"%s\",\"date\":\"%s\",\"bodyPreview\":\"%s\"}",
-                                                                                                msg.getId(),
-                                                                                                escapeJson(msg.getSubject()),
-                                                                                                msg.getFrom() != null
-                                                                                                                && msg.getFrom().getEmailAddress() != null
-                                                                                                                                ? escapeJson(msg.getFrom()
-                                                                                                                                                .getEmailAddress()
-                                                                                                                                                .getAddress())
-                                                                                                                                : "unknown",
-                                                                                                msg.getReceivedDateTime(),
-                                                                                                escapeJson(msg.getBodyPreview())))
-                                                                                .collect(Collectors.joining(",", "[",
-                                                                                                "]"));
+                                                                // The listing stays a plain array; the resume cursor goes in a second block
+                                                                List<McpSchema.Content> content = page.nextCursor() != null
+                                                                                ? List.of(new TextContent(page.json()),
+                                                                                                new TextContent(new JsonWriter()
+                                                                                                                .beginObject()
+                                                                                                                .field("nextCursor",
+                                                                                                                                page.nextCursor())
+                                                                                                                .endObject()
+                                                                                                                .toString()))
+                                                                                : List.of(new TextContent(page.json()));
 
                                                                 return new CallToolResult(
-                                                                                List.of(new TextContent(emailData)),
+                                                                                content,
                                                                                 false,
                                                                                 null,
                                                                                 Map.of());
@@ -138,20 +239,26 @@ public class OutlookMcpApplication {
                                                                                 null,
                                                                                 Map.of());
                                                         }
-                                                })
+                                                }))
 
                                 // Tool 2: Get email by ID
                                 .toolCall(new Tool(
                                                 "get_email_by_id",
                                                 "Get full email details by ID",
-                                                "Retrieves complete email information including full body for a specific email ID",
+                                                "Retrieves complete email information for a specific email ID. Long bodies are returned in slices; pass nextOffset back as offset to read on",
                                                 new McpSchema.JsonSchema(
                                                                 "object",
                                                                 Map.of(
                                                                                 "email_id", Map.of(
                                                                                                 "type", "string",
                                                                                                 "description",
-                                                                                                "The unique identifier of the email")),
+                                                                                                "The unique identifier of the email"),
+                                                                                "body_format", BODY_FORMAT_SCHEMA,
+                                                                                "offset", Map.of(
+                                                                                                "type", "number",
+                                                                                                "description",
+                                                                                                "Character offset into the body to start from (default: 0)"),
+                                                                                "max_length", MAX_LENGTH_SCHEMA),
                                                                 List.of("email_id"),
                                                                 Boolean.FALSE,
                                                                 Map.of(),
@@ -159,48 +266,32 @@ public class OutlookMcpApplication {
                                                 null,
                                                 null,
                                                 Map.of()),
-                                                (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                toolMetrics.timed("get_email_by_id", (McpSyncServerExchange exchange, CallToolRequest request) -> {
                                                         try {
+                                                                Mailbox mailbox = mailboxes.current();
                                                                 String emailId = (String) request.arguments()
                                                                                 .get("email_id");
 
-                                                                Message message = graphClient.me()
-                                                                                .messages()
-                                                                                .byMessageId(emailId)
-                                                                                .get();
-
-                                                                String toAddresses = message.getToRecipients() != null
-                                                                                ? message.getToRecipients().stream()
-                                                                                                .map(r -> "\"" + escapeJson(
-                                                                                                                r.getEmailAddress()
-                                                                                                                                .getAddress())
-                                                                                                                + "\"")
-                                                                                                .collect(Collectors
-                                                                                                                .joining(",", "[",
-                                                                                                                                "]"))
-                                                                                : "[]";
-
-                                                                String emailData = String.format(
-                                                                                "{\"id\":\"%s\",\"subject\":\"%s\",\"from\":\"%s\",\"to\":%s,\"date\":\"%s\",\"body\":\"%s\",\"hasAttachments\":%b}",
-                                                                                message.getId(),
-                                                                                escapeJson(message.getSubject()),
-                                                                                message.getFrom() != null && message
-                                                                                                .getFrom()
-                                                                                                .getEmailAddress() != null
-                                                                                                                ? escapeJson(message
-                                                                                                                                .getFrom()
-                                                                                                                                .getEmailAddress()
-                                                                                                                                .getAddress())
-                                                                                                                : "unknown",
-                                                                                toAddresses,
-                                                                                message.getReceivedDateTime(),
-                                                                                escapeJson(message.getBody() != null
-                                                                                                ? message.getBody()
-                                                                                                                .getContent()
-                                                                                                : ""),
-                                                                                message.getHasAttachments() != null
-                                                                                                ? message.getHasAttachments()
-                                                                                                : false);
+                                                                Message message = mailbox.cache().getMessage(emailId);
+                                                                if (message == null) {
+                                                                        message = mailbox.graphClient().me()
+                                                                                        .messages()
+                                                                                        .byMessageId(emailId)
+                                                                                        .get();
+                                                                        mailbox.cache().putMessage(message);
+                                                                }
+
+                                                                MessageJson.BodySlice body = MessageJson.sliceBody(
+                                                                                message,
+                                                                                plainTextRequested(request),
+                                                                                intArgument(request, "offset", 0),
+                                                                                bodyLength(request));
+
+                                                                // Size the buffer for the body up front so appending never has to grow it
+                                                                JsonWriter json = new JsonWriter(
+                                                                                MessageJson.estimateSize(body));
+                                                                MessageJson.writeMessage(json, message, body);
+                                                                String emailData = json.toString();
 
                                                                 return new CallToolResult(
                                                                                 List.of(new TextContent(emailData)),
@@ -216,7 +307,7 @@ public class OutlookMcpApplication {
                                                                                 null,
                                                                                 Map.of());
                                                         }
-                                                })
+                                                }))
 
                                 // Tool 3: Create draft response
                                 .toolCall(new Tool(
@@ -233,7 +324,8 @@ public class OutlookMcpApplication {
                                                                                 "body", Map.of(
                                                                                                 "type", "string",
                                                                                                 "description",
-                                                                                                "The body content of the draft reply")),
+                                                                                                "The body content of the draft reply"),
+                                                                                "async", ASYNC_SCHEMA),
                                                                 List.of("email_id", "body"),
                                                                 Boolean.FALSE,
                                                                 Map.of(),
@@ -241,38 +333,37 @@ public class OutlookMcpApplication {
                                                 null,
                                                 null,
                                                 Map.of()),
-                                                (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                toolMetrics.timed("create_draft_response", (McpSyncServerExchange exchange, CallToolRequest request) -> {
                                                         try {
+                                                                Mailbox mailbox = mailboxes.current();
                                                                 String emailId = (String) request.arguments()
                                                                                 .get("email_id");
                                                                 String body = (String) request.arguments().get("body");
 
-                                                                CreateReplyPostRequestBody createReplyPostRequestBody = new CreateReplyPostRequestBody();
-                                                                Message draft = graphClient.me()
+                                                                if (asyncRequested(request)) {
+                                                                        return accepted(List.of(writePipeline.submitDraftReply(emailId, body)));
+                                                                }
+
+                                                                // The body goes into createReply itself, so the draft takes one round-trip
+                                                                Message draft = mailbox.graphClient().me()
                                                                                 .messages()
                                                                                 .byMessageId(emailId)
                                                                                 .createReply()
-                                                                                .post(createReplyPostRequestBody);
-
-                                                                Message updateMessage = new Message();
-                                                                com.microsoft.graph.models.ItemBody itemBody = new com.microsoft.graph.models.ItemBody();
-                                                                itemBody.setContentType(
-                                                                                com.microsoft.graph.models.BodyType.Text);
-                                                                itemBody.setContent(body);
-                                                                updateMessage.setBody(itemBody);
+                                                                                .post(WritePipeline.replyWithBody(body));
 
-                                                                graphClient.me()
-                                                                                .messages()
-                                                                                .byMessageId(draft.getId())
-                                                                                .patch(updateMessage);
+                                                                mailbox.cache().invalidateMessage(emailId);
+                                                                mailbox.sync().markStale();
 
-                                                                String result = String.format(
-                                                                                "{\"success\":true,\"draftId\":\"%s\",\"inReplyTo\":\"%s\",\"subject\":\"%s\",\"body\":\"%s\",\"createdAt\":\"%s\"}",
-                                                                                draft.getId(),
-                                                                                emailId,
-                                                                                escapeJson(draft.getSubject()),
-                                                                                escapeJson(body),
-                                                                                java.time.Instant.now().toString());
+                                                                String result = new JsonWriter()
+                                                                                .beginObject()
+                                                                                .field("success", true)
+                                                                                .field("draftId", draft.getId())
+                                                                                .field("inReplyTo", emailId)
+                                                                                .field("subject", draft.getSubject())
+                                                                                .field("body", body)
+                                                                                .field("createdAt", java.time.Instant.now())
+                                                                                .endObject()
+                                                                                .toString();
 
                                                                 return new CallToolResult(
                                                                                 List.of(new TextContent(result)),
@@ -288,7 +379,7 @@ public class OutlookMcpApplication {
                                                                                 null,
                                                                                 Map.of());
                                                         }
-                                                })
+                                                }))
                                 // Tool 4: Delete email by ID
                                 .toolCall(new Tool(
                                                 "delete_email_by_id",
@@ -300,7 +391,8 @@ public class OutlookMcpApplication {
                                                                                 "email_id", Map.of(
                                                                                                 "type", "string",
                                                                                                 "description",
-                                                                                                "The unique identifier of the email to delete")),
+                                                                                                "The unique identifier of the email to delete"),
+                                                                                "async", ASYNC_SCHEMA),
                                                                 List.of("email_id"),
                                                                 Boolean.FALSE,
                                                                 Map.of(),
@@ -308,21 +400,32 @@ public class OutlookMcpApplication {
                                                 null,
                                                 null,
                                                 Map.of()),
-                                                (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                toolMetrics.timed("delete_email_by_id", (McpSyncServerExchange exchange, CallToolRequest request) -> {
                                                         try {
+                                                                Mailbox mailbox = mailboxes.current();
                                                                 String emailId = (String) request.arguments()
                                                                                 .get("email_id");
 
+                                                                if (asyncRequested(request)) {
+                                                                        return accepted(List.of(writePipeline.submitDelete(emailId)));
+                                                                }
+
                                                                 // Delete email via Graph API
-                                                                graphClient.me()
+                                                                mailbox.graphClient().me()
                                                                                 .messages()
                                                                                 .byMessageId(emailId)
                                                                                 .delete();
 
-                                                                String result = String.format(
-                                                                                "{\"success\":true,\"message\":\"Email %s has been deleted successfully\",\"deletedAt\":\"%s\"}",
-                                                                                emailId,
-                                                                                java.time.Instant.now().toString());
+                                                                mailbox.cache().invalidate(emailId);
+
+                                                                String result = new JsonWriter()
+                                                                                .beginObject()
+                                                                                .field("success", true)
+                                                                                .field("message", "Email " + emailId
+                                                                                                + " has been deleted successfully")
+                                                                                .field("deletedAt", java.time.Instant.now())
+                                                                                .endObject()
+                                                                                .toString();
 
                                                                 return new CallToolResult(
                                                                                 List.of(new TextContent(result)),
@@ -338,33 +441,617 @@ public class OutlookMcpApplication {
                                                                                 null,
                                                                                 Map.of());
                                                         }
-                                                });
+                                                }))
+
+                                // Tool 5: Get emails by IDs (batched)
+                                .toolCall(new Tool(
+                                                "get_emails_by_ids",
+                                                "Get full email details for several IDs",
+                                                "Retrieves complete email information for a list of email IDs in as few Graph requests as possible. Each entry reports its own success or error",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "email_ids", Map.of(
+                                                                                                "type", "array",
+                                                                                                "items", Map.of("type", "string"),
+                                                                                                "description",
+                                                                                                "The unique identifiers of the emails"),
+                                                                                "body_format", BODY_FORMAT_SCHEMA,
+                                                                                "max_length", MAX_LENGTH_SCHEMA),
+                                                                List.of("email_ids"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("get_emails_by_ids", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                List<String> emailIds = stringList(request.arguments()
+                                                                                .get("email_ids"));
+
+                                                                List<MessageBatch.Result> results = mailbox.batch()
+                                                                                .getMessages(emailIds);
+
+                                                                boolean plainText = plainTextRequested(request);
+                                                                int maxLength = bodyLength(request);
+                                                                List<MessageJson.BodySlice> bodies = new ArrayList<>(results.size());
+                                                                int capacity = 2;
+                                                                for (MessageBatch.Result result : results) {
+                                                                        MessageJson.BodySlice body = result.success()
+                                                                                        ? MessageJson.sliceBody(result.message(),
+                                                                                                        plainText, 0, maxLength)
+                                                                                        : null;
+                                                                        bodies.add(body);
+                                                                        capacity += body != null ? MessageJson.estimateSize(body) : 256;
+                                                                }
+                                                                JsonWriter json = new JsonWriter(capacity).beginArray();
+                                                                for (int i = 0; i < results.size(); i++) {
+                                                                        MessageBatch.Result result = results.get(i);
+                                                                        json.beginObject()
+                                                                                        .field("id", result.id())
+                                                                                        .field("success", result.success());
+                                                                        if (result.success()) {
+                                                                                json.name("email");
+                                                                                MessageJson.writeMessage(json, result.message(),
+                                                                                                bodies.get(i));
+                                                                        } else {
+                                                                                json.field("status", result.status())
+                                                                                                .field("error", result.error());
+                                                                        }
+                                                                        json.endObject();
+                                                                }
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(json.endArray().toString())),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error fetching emails: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 6: Delete emails by IDs (batched)
+                                .toolCall(new Tool(
+                                                "delete_emails",
+                                                "Delete several emails by ID",
+                                                "Permanently deletes a list of emails from Outlook in as few Graph requests as possible. Each entry reports its own success or error",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "email_ids", Map.of(
+                                                                                                "type", "array",
+                                                                                                "items", Map.of("type", "string"),
+                                                                                                "description",
+                                                                                                "The unique identifiers of the emails to delete"),
+                                                                                "async", ASYNC_SCHEMA),
+                                                                List.of("email_ids"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("delete_emails", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                List<String> emailIds = stringList(request.arguments()
+                                                                                .get("email_ids"));
+
+                                                                if (asyncRequested(request)) {
+                                                                        List<Operation> operations = new ArrayList<>();
+                                                                        for (String emailId : new LinkedHashSet<>(emailIds)) {
+                                                                                operations.add(writePipeline.submitDelete(emailId));
+                                                                        }
+                                                                        return accepted(operations);
+                                                                }
+
+                                                                List<MessageBatch.Result> results = mailbox.batch()
+                                                                                .deleteMessages(emailIds);
+
+                                                                int deleted = 0;
+                                                                JsonWriter json = new JsonWriter(128 * results.size() + 64);
+                                                                json.beginObject().name("results").beginArray();
+                                                                for (MessageBatch.Result result : results) {
+                                                                        json.beginObject()
+                                                                                        .field("id", result.id())
+                                                                                        .field("success", result.success());
+                                                                        if (result.success()) {
+                                                                                deleted++;
+                                                                        } else {
+                                                                                json.field("status", result.status())
+                                                                                                .field("error", result.error());
+                                                                        }
+                                                                        json.endObject();
+                                                                }
+                                                                String result = json.endArray()
+                                                                                .field("deleted", deleted)
+                                                                                .field("failed", results.size() - deleted)
+                                                                                .field("deletedAt", java.time.Instant.now())
+                                                                                .endObject()
+                                                                                .toString();
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(result)),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error deleting emails: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 7: Search emails in the local index
+                                .toolCall(new Tool(
+                                                "search_emails",
+                                                "Search emails by text",
+                                                "Full-text search over subject, sender and body of emails seen by this server, ranked by relevance. Runs against a local index without calling Outlook",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "query", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "Words to search for"),
+                                                                                "limit", Map.of(
+                                                                                                "type", "number",
+                                                                                                "description",
+                                                                                                "Maximum number of results to return (default: 10)")),
+                                                                List.of("query"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("search_emails", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                String query = (String) request.arguments().get("query");
+                                                                int limit = request.arguments().containsKey("limit")
+                                                                                ? ((Number) request.arguments().get("limit"))
+                                                                                                .intValue()
+                                                                                : 10;
+
+                                                                // Local only: the index follows sync and fetches, so
+                                                                // searching never waits on Graph
+                                                                List<SearchIndex.Hit> hits = mailbox.searchIndex().search(query, limit);
+
+                                                                JsonWriter json = new JsonWriter(256 * hits.size() + 2)
+                                                                                .beginArray();
+                                                                for (SearchIndex.Hit hit : hits) {
+                                                                        json.beginObject()
+                                                                                        .field("id", hit.id())
+                                                                                        .field("subject", hit.subject())
+                                                                                        .field("from", hit.from())
+                                                                                        .field("date", hit.date())
+                                                                                        .field("score", Math.round(hit.score() * 1000) / 1000.0)
+                                                                                        .endObject();
+                                                                }
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(json.endArray().toString())),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error searching emails: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 8: List attachments of an email
+                                .toolCall(new Tool(
+                                                "list_attachments",
+                                                "List the attachments of an email",
+                                                "Lists name, content type and size of each attachment of an email, without their content",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "email_id", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "The unique identifier of the email")),
+                                                                List.of("email_id"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("list_attachments", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                String emailId = (String) request.arguments()
+                                                                                .get("email_id");
+
+                                                                AttachmentCollectionResponse response = mailbox.graphClient().me()
+                                                                                .messages()
+                                                                                .byMessageId(emailId)
+                                                                                .attachments()
+                                                                                .get(requestConfiguration -> requestConfiguration.queryParameters.select = new String[] {
+                                                                                                "id", "name", "contentType", "size", "isInline" });
+
+                                                                JsonWriter json = new JsonWriter()
+                                                                                .beginObject()
+                                                                                .field("emailId", emailId)
+                                                                                .name("attachments").beginArray();
+                                                                if (response != null && response.getValue() != null) {
+                                                                        for (Attachment attachment : response.getValue()) {
+                                                                                MessageJson.writeAttachment(json, attachment);
+                                                                        }
+                                                                }
+                                                                String result = json.endArray().endObject().toString();
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(result)),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error listing attachments: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 9: Read attachment content
+                                .toolCall(new Tool(
+                                                "read_attachment",
+                                                "Read the content of an attachment",
+                                                "Returns a byte range of an attachment's content, as text for textual types and base64 otherwise. Pass nextOffset back as offset to read on",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "email_id", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "The unique identifier of the email"),
+                                                                                "attachment_id", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "The attachment ID returned by list_attachments"),
+                                                                                "offset", Map.of(
+                                                                                                "type", "number",
+                                                                                                "description",
+                                                                                                "Byte offset to start reading from (default: 0)"),
+                                                                                "length", Map.of(
+                                                                                                "type", "number",
+                                                                                                "description",
+                                                                                                "Maximum number of bytes to return (default and upper bound: server limit)"),
+                                                                                "encoding", Map.of(
+                                                                                                "type", "string",
+                                                                                                "enum", List.of("text", "base64"),
+                                                                                                "description",
+                                                                                                "Return the bytes as UTF-8 text or base64. Default: text for textual content types, base64 otherwise")),
+                                                                List.of("email_id", "attachment_id"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("read_attachment", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                String emailId = (String) request.arguments()
+                                                                                .get("email_id");
+                                                                String attachmentId = (String) request.arguments()
+                                                                                .get("attachment_id");
+                                                                int offset = Math.max(0, intArgument(request, "offset", 0));
+                                                                int length = Math.min(
+                                                                                intArgument(request, "length", maxAttachmentRead),
+                                                                                maxAttachmentRead);
+
+                                                                AttachmentSpool.Spooled attachment = attachmentSpool.spool(
+                                                                                mailbox, emailId, attachmentId);
+                                                                String encoding = (String) request.arguments().get("encoding");
+                                                                boolean text = encoding != null
+                                                                                ? "text".equalsIgnoreCase(encoding)
+                                                                                : AttachmentSpool.isTextual(attachment.contentType());
+
+                                                                byte[] bytes = attachmentSpool.read(attachment, offset, length);
+                                                                int count = text ? AttachmentSpool.completeUtf8Length(bytes)
+                                                                                : bytes.length;
+                                                                String data = text
+                                                                                ? new String(bytes, 0, count, StandardCharsets.UTF_8)
+                                                                                : Base64.getEncoder().encodeToString(
+                                                                                                count == bytes.length ? bytes : Arrays.copyOf(bytes, count));
+
+                                                                JsonWriter json = new JsonWriter(data.length() + 512)
+                                                                                .beginObject()
+                                                                                .field("id", attachmentId)
+                                                                                .field("name", attachment.name())
+                                                                                .field("contentType", attachment.contentType())
+                                                                                .field("size", attachment.size())
+                                                                                .field("offset", offset)
+                                                                                .field("length", count)
+                                                                                .field("encoding", text ? "text" : "base64")
+                                                                                .field("data", data);
+                                                                if (offset + count < attachment.size()) {
+                                                                        json.field("nextOffset", offset + count);
+                                                                }
+                                                                String result = json.endObject().toString();
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(result)),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error reading attachment: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 10: Status of asynchronous operations
+                                .toolCall(new Tool(
+                                                "get_operation_status",
+                                                "Get the status of asynchronous operations",
+                                                "Reports whether operations started with async=true are pending, succeeded or failed, with the draft ID or error",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "operation_ids", Map.of(
+                                                                                                "type", "array",
+                                                                                                "items", Map.of("type", "string"),
+                                                                                                "description",
+                                                                                                "Operation IDs returned by the asynchronous calls")),
+                                                                List.of("operation_ids"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("get_operation_status", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                List<String> operationIds = stringList(request.arguments()
+                                                                                .get("operation_ids"));
+
+                                                                JsonWriter json = new JsonWriter(160 * operationIds.size() + 2)
+                                                                                .beginArray();
+                                                                for (String operationId : operationIds) {
+                                                                        Operation operation = writePipeline.find(mailbox, operationId);
+                                                                        if (operation == null) {
+                                                                                // Unknown, expired or belonging to another mailbox
+                                                                                json.beginObject()
+                                                                                                .field("operationId", operationId)
+                                                                                                .field("status", "unknown")
+                                                                                                .endObject();
+                                                                        } else {
+                                                                                writeOperation(json, operation);
+                                                                        }
+                                                                }
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(json.endArray().toString())),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error fetching operation status: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }))
+
+                                // Tool 11: Get a whole conversation
+                                .toolCall(new Tool(
+                                                "get_thread",
+                                                "Get all emails of a conversation",
+                                                "Returns every email in the conversation of the given email, oldest first, in one call. Quoted history is trimmed from each body by default",
+                                                new McpSchema.JsonSchema(
+                                                                "object",
+                                                                Map.of(
+                                                                                "email_id", Map.of(
+                                                                                                "type", "string",
+                                                                                                "description",
+                                                                                                "The unique identifier of any email in the conversation"),
+                                                                                "trim_quoted", Map.of(
+                                                                                                "type", "boolean",
+                                                                                                "description",
+                                                                                                "Return only the part of each body that is new in that email, without quoted earlier messages. Default: true"),
+                                                                                "body_format", BODY_FORMAT_SCHEMA,
+                                                                                "max_length", MAX_LENGTH_SCHEMA),
+                                                                List.of("email_id"),
+                                                                Boolean.FALSE,
+                                                                Map.of(),
+                                                                Map.of()),
+                                                null,
+                                                null,
+                                                Map.of()),
+                                                toolMetrics.timed("get_thread", (McpSyncServerExchange exchange, CallToolRequest request) -> {
+                                                        try {
+                                                                Mailbox mailbox = mailboxes.current();
+                                                                String emailId = (String) request.arguments()
+                                                                                .get("email_id");
+                                                                boolean trimQuoted = !Boolean.FALSE.equals(
+                                                                                request.arguments().get("trim_quoted"));
+                                                                boolean plainText = plainTextRequested(request);
+                                                                int maxLength = bodyLength(request);
+
+                                                                // A cached copy saves the lookup of the conversation ID
+                                                                Message known = mailbox.cache().getMessage(emailId);
+                                                                if (known == null) {
+                                                                        known = mailbox.cache().getHeader(emailId);
+                                                                }
+                                                                ConversationThreads.Conversation conversation = mailbox.threads()
+                                                                                .get(emailId, known != null ? known.getConversationId() : null);
+
+                                                                List<MessageJson.BodySlice> bodies = new ArrayList<>(
+                                                                                conversation.messages().size());
+                                                                int capacity = 128;
+                                                                for (Message message : conversation.messages()) {
+                                                                        MessageJson.BodySlice body = MessageJson.sliceBody(
+                                                                                        trimQuoted && message.getUniqueBody() != null
+                                                                                                        ? message.getUniqueBody()
+                                                                                                        : message.getBody(),
+                                                                                        plainText,
+                                                                                        0,
+                                                                                        maxLength);
+                                                                        bodies.add(body);
+                                                                        capacity += MessageJson.estimateSize(body);
+                                                                }
+
+                                                                JsonWriter json = new JsonWriter(capacity)
+                                                                                .beginObject()
+                                                                                .field("conversationId", conversation.id())
+                                                                                .field("messageCount", conversation.messages().size())
+                                                                                .field("totalCount", conversation.totalCount())
+                                                                                .field("complete", conversation.complete())
+                                                                                .name("messages").beginArray();
+                                                                for (int i = 0; i < bodies.size(); i++) {
+                                                                        MessageJson.writeThreadMessage(json,
+                                                                                        conversation.messages().get(i), bodies.get(i));
+                                                                }
+
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(json.endArray().endObject().toString())),
+                                                                                false,
+                                                                                null,
+                                                                                Map.of());
+                                                        } catch (Exception e) {
+                                                                return new CallToolResult(
+                                                                                List.of(new TextContent(
+                                                                                                "Error fetching thread: "
+                                                                                                                + e.getMessage())),
+                                                                                true,
+                                                                                null,
+                                                                                Map.of());
+                                                        }
+                                                }));
+        }
+
+        // Helper method to read whether the caller asked for asynchronous execution
+        private static boolean asyncRequested(CallToolRequest request) {
+                return Boolean.TRUE.equals(request.arguments().get("async"));
+        }
+
+        // Helper method to acknowledge operations handed to the write pipeline
+        private static CallToolResult accepted(List<Operation> operations) {
+                JsonWriter json = new JsonWriter(160 * operations.size() + 32)
+                                .beginObject()
+                                .name("operations").beginArray();
+                for (Operation operation : operations) {
+                        writeOperation(json, operation);
+                }
+                return new CallToolResult(
+                                List.of(new TextContent(json.endArray().endObject().toString())),
+                                false,
+                                null,
+                                Map.of());
+        }
+
+        // Helper method to write the status shape of an asynchronous operation
+        private static void writeOperation(JsonWriter json, Operation operation) {
+                json.beginObject()
+                                .field("operationId", operation.id())
+                                .field("type", operation.type().name().toLowerCase(Locale.ROOT))
+                                .field("emailId", operation.emailId())
+                                .field("status", operation.status().name().toLowerCase(Locale.ROOT))
+                                .field("submittedAt", Instant.ofEpochMilli(operation.submittedAt()));
+                if (operation.result() != null) {
+                        json.field("draftId", operation.result());
+                }
+                if (operation.error() != null) {
+                        json.field("error", operation.error());
+                }
+                if (operation.status() != Operation.Status.PENDING) {
+                        json.field("completedAt", Instant.ofEpochMilli(operation.completedAt()));
+                }
+                json.endObject();
+        }
+
+        // Helper method to read whether the caller wants the body as plain text
+        private static boolean plainTextRequested(CallToolRequest request) {
+                return "text".equalsIgnoreCase((String) request.arguments().get("body_format"));
+        }
+
+        // Helper method to read the body length limit, capped by configuration
+        private int bodyLength(CallToolRequest request) {
+                return Math.min(intArgument(request, "max_length", maxBodyLength), maxBodyLength);
+        }
+
+        // Helper method to read an optional numeric argument
+        private static int intArgument(CallToolRequest request, String name, int defaultValue) {
+                Object value = request.arguments().get(name);
+                return value instanceof Number number ? number.intValue() : defaultValue;
+        }
+
+        // Helper method to read a list of strings from tool arguments
+        private static List<String> stringList(Object value) {
+                if (!(value instanceof List<?> list) || list.isEmpty()) {
+                        throw new IllegalArgumentException("Expected a non-empty list of IDs");
+                }
+                return list.stream().map(String::valueOf).toList();
         }
 
         @Bean
-        public CommandLineRunner authTrigger(GraphServiceClient graphClient) {
-                return args -> {
-                        System.out.println("\nInitializing Microsoft Graph connection...");
+        public CommandLineRunner authTrigger(GraphServiceClient graphClient, DeviceCodeCredential credential,
+                        AuthRecordStore authRecordStore,
+                        @Value("${outlook.auth.warmup-enabled:true}") boolean warmupEnabled,
+                        @Value("${outlook.mailboxes.default-enabled:true}") boolean defaultMailboxEnabled) {
+                // Checked at run time rather than with @ConditionalOnProperty, which an AOT-processed
+                // build (fast-start profile) evaluates once at build time
+                if (!warmupEnabled || !defaultMailboxEnabled) {
+                        return args -> log.info("Graph warm-up disabled");
+                }
+                // Warm up in the background so the MCP endpoint accepts connections right away;
+                // the first tool calls simply wait for the token like any other Graph call
+                return args -> Thread.ofVirtual().name("graph-warmup").start(() -> {
+                        log.info("Initializing Microsoft Graph connection...");
                         try {
-                                // This call will trigger the Device Code Flow challenge if not authenticated
+                                if (authRecordStore.load() == null) {
+                                        // First sign-in: triggers the Device Code Flow challenge and remembers
+                                        // the account so later restarts can use the cached refresh token
+                                        AuthenticationRecord record = credential.authenticate(
+                                                        new TokenRequestContext().addScopes(GraphConfig.GRAPH_SCOPE))
+                                                        .block();
+                                        if (record != null) {
+                                                authRecordStore.save(record);
+                                        }
+                                }
                                 graphClient.me().get();
-                                System.out.println("Graph connection initialized successfully.");
+                                log.info("Graph connection initialized successfully.");
                         } catch (Exception e) {
                                 // We don't want to crash the app if auth fails (e.g. timeout),
                                 // but the user should see the error.
-                                System.err.println("Note: Initial Graph connection failed: " + e.getMessage());
+                                log.warn("Initial Graph connection failed: {}", e.getMessage());
                         }
-                };
-        }
-
-        // Helper method to escape JSON strings
-        private static String escapeJson(String value) {
-                if (value == null)
-                        return "";
-                return value.replace("\\", "\\\\")
-                                .replace("\"", "\\\"")
-                                .replace("\n", "\\n")
-                                .replace("\r", "\\r")
-                                .replace("\t", "\\t");
+                });
         }
 }
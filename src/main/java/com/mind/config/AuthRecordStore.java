@@ -0,0 +1,55 @@
+package com.mind.config;
+
+import com.azure.identity.AuthenticationRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Persists the {@link AuthenticationRecord} of the signed-in account.
+ *
+ * The record holds no secrets, only the account identifiers the credential needs to find its
+ * refresh token in the persistent token cache. With both in place a restart signs in silently.
+ */
+@Component
+public class AuthRecordStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthRecordStore.class);
+
+    private final Path path;
+
+    public AuthRecordStore(@Value("${outlook.auth.record-file:${user.home}/.outlook-mcp/auth-record.json}") String path) {
+        this.path = Paths.get(path);
+    }
+
+    public AuthenticationRecord load() {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return AuthenticationRecord.deserialize(in);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable authentication record {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(AuthenticationRecord record) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (OutputStream out = Files.newOutputStream(path)) {
+                record.serialize(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save authentication record {}: {}", path, e.getMessage());
+        }
+    }
+}
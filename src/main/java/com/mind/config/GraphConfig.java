@@ -1,27 +1,96 @@
 package com.mind.config;
 
+import com.azure.identity.AuthenticationRecord;
 import com.azure.identity.DeviceCodeCredential;
 import com.azure.identity.DeviceCodeCredentialBuilder;
+import com.azure.identity.TokenCachePersistenceOptions;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.mind.graph.GraphClientStats;
+import com.mind.graph.GraphClients;
+import com.mind.graph.GraphMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.ConnectionPool;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class GraphConfig {
 
+    // Hosts that receive access tokens; anything else (e.g. a local stub) is called anonymously
+    private static final String[] GRAPH_HOSTS = {
+            "graph.microsoft.com", "graph.microsoft.us", "dod-graph.microsoft.us",
+            "graph.microsoft.de", "microsoftgraph.chinacloudapi.cn", "canary.graph.microsoft.com" };
+    public static final String GRAPH_SCOPE = "https://graph.microsoft.com/.default";
+
     @Value("${azure.client-id}")
     private String clientId;
 
     @Value("${azure.tenant-id}")
     private String tenantId;
 
+    @Value("${outlook.auth.token-cache-name:outlook-mcp}")
+    private String tokenCacheName;
+
+    @Value("${outlook.auth.allow-unencrypted-cache:false}")
+    private boolean allowUnencryptedCache;
+
+    @Value("${outlook.graph.base-url:https://graph.microsoft.com/v1.0}")
+    private String graphBaseUrl;
+
+    @Value("${outlook.graph.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    @Value("${outlook.graph.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMillis;
+
+    @Value("${outlook.graph.rate-limit.max-per-second:15}")
+    private double maxRequestsPerSecond;
+
+    @Value("${outlook.graph.rate-limit.min-per-second:1}")
+    private double minRequestsPerSecond;
+
+    @Value("${outlook.graph.rate-limit.burst:15}")
+    private int requestBurst;
+
+    @Value("${outlook.http.max-idle-connections:16}")
+    private int maxIdleConnections;
+
+    @Value("${outlook.http.keep-alive-seconds:300}")
+    private long keepAliveSeconds;
+
     @Bean
-    public GraphServiceClient graphServiceClient() {
-        // Create credential using device code flow
-        DeviceCodeCredential credential = new DeviceCodeCredentialBuilder()
+    public GraphClientStats graphClientStats() {
+        return new GraphClientStats();
+    }
+
+    @Bean
+    public ConnectionPool graphConnectionPool() {
+        // One pool for every mailbox; with HTTP/2 a single connection multiplexes many requests
+        return new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+    }
+
+    @Bean
+    public GraphClients graphClients(ConnectionPool graphConnectionPool, GraphClientStats graphClientStats,
+                                     MeterRegistry meterRegistry) {
+        return new GraphClients(graphConnectionPool, graphClientStats, new GraphMetrics(meterRegistry),
+                GRAPH_HOSTS, GRAPH_SCOPE, graphBaseUrl,
+                maxConcurrentRequests, acquireTimeoutMillis,
+                maxRequestsPerSecond, minRequestsPerSecond, requestBurst);
+    }
+
+    @Bean
+    public DeviceCodeCredential graphCredential(AuthRecordStore authRecordStore) {
+        // Create credential using device code flow. Tokens are kept in an OS-encrypted on-disk cache
+        // (DPAPI, Keychain or libsecret), so with a saved authentication record restarts refresh silently.
+        DeviceCodeCredentialBuilder builder = new DeviceCodeCredentialBuilder()
                 .clientId(clientId)
                 .tenantId(tenantId)
+                .tokenCachePersistenceOptions(new TokenCachePersistenceOptions()
+                        .setName(tokenCacheName)
+                        .setUnencryptedStorageAllowed(allowUnencryptedCache))
                 .challengeConsumer(challenge -> {
                     // This prints the message to the console for the user to see
                     System.out.println(
@@ -29,10 +98,18 @@ public class GraphConfig {
                     System.out.println(challenge.getMessage());
                     System.out.println(
                             "================================================================================\n");
-                })
-                .build();
+                });
 
-        // Create and return GraphServiceClient
-        return new GraphServiceClient(credential);
+        AuthenticationRecord record = authRecordStore.load();
+        if (record != null) {
+            builder.authenticationRecord(record);
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public GraphServiceClient graphServiceClient(DeviceCodeCredential credential, GraphClients graphClients) {
+        // Client for the server's own signed-in account, serving sessions that bring no token
+        return graphClients.create(credential);
     }
 }
@@ -0,0 +1,41 @@
+package com.mind.config;
+
+import com.mind.graph.GraphClientStats;
+import com.mind.metrics.McpSessionTracker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    @Value("${outlook.metrics.session-idle-timeout-seconds:1800}")
+    private long sessionIdleTimeoutSeconds;
+
+    @Bean
+    public FilterRegistrationBean<McpSessionTracker> mcpSessionTracker(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<McpSessionTracker> filterBean = new FilterRegistrationBean<>(
+                new McpSessionTracker(meterRegistry, sessionIdleTimeoutSeconds));
+        filterBean.addUrlPatterns("/mcp/*");
+        return filterBean;
+    }
+
+    @Bean
+    public MeterBinder graphClientStatsMetrics(GraphClientStats stats) {
+        return registry -> {
+            FunctionCounter.builder("graph.client.throttled", stats, GraphClientStats::getThrottled)
+                    .description("Graph responses with status 429 or 503")
+                    .register(registry);
+            FunctionCounter.builder("graph.client.retried", stats, GraphClientStats::getRetried)
+                    .description("Graph requests retried by the SDK retry handler")
+                    .register(registry);
+            FunctionCounter.builder("graph.client.coalesced", stats, GraphClientStats::getCoalesced)
+                    .description("Graph reads served by an identical request already in flight")
+                    .register(registry);
+        };
+    }
+}
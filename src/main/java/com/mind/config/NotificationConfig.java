@@ -0,0 +1,21 @@
+package com.mind.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mind.notify.GraphWebhookServlet;
+import com.mind.notify.MailSubscriptions;
+import jakarta.servlet.http.HttpServlet;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class NotificationConfig {
+
+    @Bean
+    public ServletRegistrationBean<HttpServlet> graphWebhookServlet(MailSubscriptions mailSubscriptions,
+                                                                    ObjectMapper objectMapper) {
+        // Called by Graph, not by MCP clients, so it sits outside /mcp and its mailbox filter
+        return new ServletRegistrationBean<>(new GraphWebhookServlet(mailSubscriptions, objectMapper),
+                MailSubscriptions.WEBHOOK_PATH);
+    }
+}
@@ -0,0 +1,74 @@
+package com.mind.graph;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Credential holding a Graph access token obtained by the MCP client for its own user.
+ *
+ * Several sessions of one user may send different tokens. The credential keeps the one that
+ * expires last, so a client still sending an older token never downgrades the others. Expiry is
+ * read from the token's {@code exp} claim; tokens that are not JWTs, or carry no expiry, are taken
+ * to be valid for {@link #OPAQUE_TOKEN_LIFETIME} from when they were received. Graph enforces the
+ * real validity either way.
+ */
+public class BearerTokenCredential implements TokenCredential {
+
+    static final Duration OPAQUE_TOKEN_LIFETIME = Duration.ofHours(1);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private volatile AccessToken token;
+
+    public BearerTokenCredential(String token) {
+        update(token);
+    }
+
+    /**
+     * Switches to {@code token} unless the current token expires later.
+     */
+    public synchronized void update(String token) {
+        AccessToken current = this.token;
+        if (current != null && current.getToken().equals(token)) {
+            return;
+        }
+        OffsetDateTime expiresAt = expiresAt(token);
+        if (current == null || !expiresAt.isBefore(current.getExpiresAt())) {
+            this.token = new AccessToken(token, expiresAt);
+        }
+    }
+
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext request) {
+        return Mono.just(token);
+    }
+
+    /**
+     * When {@code token} expires according to its {@code exp} claim, or {@link #OPAQUE_TOKEN_LIFETIME}
+     * from now if it has none.
+     */
+    public static OffsetDateTime expiresAt(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                JsonNode exp = JSON.readTree(Base64.getUrlDecoder().decode(parts[1])).get("exp");
+                if (exp != null && exp.canConvertToLong()) {
+                    return Instant.ofEpochSecond(exp.asLong()).atOffset(ZoneOffset.UTC);
+                }
+            } catch (Exception e) {
+                // Not a JWT after all
+            }
+        }
+        return OffsetDateTime.now(ZoneOffset.UTC).plus(OPAQUE_TOKEN_LIFETIME);
+    }
+}
@@ -0,0 +1,48 @@
+package com.mind.graph;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of outstanding Graph HTTP calls for one mailbox.
+ *
+ * Tool handlers run on virtual threads, so without a limit the number of concurrent sessions
+ * translates directly into concurrent Graph requests and Graph starts throttling. Callers beyond
+ * the limit wait for a permit; if none frees up within the timeout the call fails fast.
+ */
+public class GraphBulkhead implements Interceptor {
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+
+    public GraphBulkhead(int maxConcurrent, long acquireTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent Graph requests, try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a Graph request slot");
+        }
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,38 @@
+package com.mind.graph;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the Graph HTTP middleware: responses throttled by Graph, requests retried by the
+ * SDK retry handler, and reads served by joining an identical request already in flight.
+ */
+public class GraphClientStats {
+
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    void recordThrottled() {
+        throttled.incrementAndGet();
+    }
+
+    void recordRetried() {
+        retried.incrementAndGet();
+    }
+
+    void recordCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,74 @@
+package com.mind.graph;
+
+import com.azure.core.credential.TokenCredential;
+import com.microsoft.graph.core.requests.GraphClientFactory;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.authentication.AzureIdentityAuthenticationProvider;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.List;
+
+/**
+ * Creates one {@link GraphServiceClient} per mailbox on top of a single shared OkHttp client.
+ *
+ * Every client derived here shares the connection pool, dispatcher and the Graph default
+ * middleware, so a new mailbox costs a handful of small objects rather than its own sockets.
+ * Coalescing and metrics are process-wide; rate limiting and the concurrency cap are added per
+ * mailbox, because Graph throttles each mailbox separately.
+ */
+public class GraphClients {
+
+    private final OkHttpClient shared;
+    private final GraphClientStats stats;
+    private final GraphMetrics metrics;
+    private final String[] allowedHosts;
+    private final String scope;
+    private final String baseUrl;
+    private final int maxConcurrentRequests;
+    private final long acquireTimeoutMillis;
+    private final double maxRequestsPerSecond;
+    private final double minRequestsPerSecond;
+    private final int requestBurst;
+
+    public GraphClients(ConnectionPool connectionPool, GraphClientStats stats, GraphMetrics metrics,
+                        String[] allowedHosts, String scope, String baseUrl,
+                        int maxConcurrentRequests, long acquireTimeoutMillis,
+                        double maxRequestsPerSecond, double minRequestsPerSecond, int requestBurst) {
+        // Graph default middleware (retry, redirect, compression) followed by our own, innermost last:
+        // identical reads are coalesced before they take a rate token or a concurrency slot
+        this.shared = GraphClientFactory.create()
+                .connectionPool(connectionPool)
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(new GraphCoalescer(stats))
+                .build();
+        this.stats = stats;
+        this.metrics = metrics;
+        this.allowedHosts = allowedHosts;
+        this.scope = scope;
+        this.baseUrl = baseUrl;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.minRequestsPerSecond = minRequestsPerSecond;
+        this.requestBurst = requestBurst;
+    }
+
+    /**
+     * Creates a client for the mailbox {@code credential} signs in to. Tokens are only attached
+     * for Microsoft Graph hosts, so the base URL can point at a local stub.
+     */
+    public GraphServiceClient create(TokenCredential credential) {
+        OkHttpClient httpClient = shared.newBuilder()
+                .addInterceptor(new GraphThrottle(stats, maxRequestsPerSecond, minRequestsPerSecond, requestBurst))
+                .addInterceptor(new GraphBulkhead(maxConcurrentRequests, acquireTimeoutMillis))
+                .addInterceptor(metrics)
+                .build();
+        GraphServiceClient graphClient = new GraphServiceClient(
+                new AzureIdentityAuthenticationProvider(credential, allowedHosts, scope),
+                httpClient);
+        graphClient.getRequestAdapter().setBaseUrl(baseUrl);
+        return graphClient;
+    }
+}
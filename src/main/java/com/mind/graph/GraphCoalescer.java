@@ -0,0 +1,153 @@
+package com.mind.graph;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Single-flight for Graph reads: identical GET requests issued while one is already in flight wait
+ * for that response instead of going upstream again.
+ *
+ * Requests are identical when URL, credentials and Prefer header match. The leader's response is
+ * only buffered when another request has joined it by the time the response arrives, and only if
+ * the body fits in {@link #MAX_SHARED_BYTES}; otherwise the leader streams it as usual and any
+ * followers send their own request. Raw content downloads ({@code /$value}) are never coalesced
+ * since they can be arbitrarily large.
+ */
+public class GraphCoalescer implements Interceptor {
+
+    static final long MAX_SHARED_BYTES = 1024 * 1024;
+
+    private final GraphClientStats stats;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    public GraphCoalescer(GraphClientStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.url().encodedPath().endsWith("/$value")) {
+            return chain.proceed(request);
+        }
+
+        String key = request.url() + "|" + request.header("Authorization") + "|" + request.header("Prefer");
+        Flight mine = new Flight();
+        Flight leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            BufferedResponse shared = leader.join() ? await(leader.result) : null;
+            if (shared == null) {
+                // Joined too late, or the leader's response was too large to share
+                return chain.proceed(request);
+            }
+            stats.recordCoalesced();
+            return shared.toResponse(request);
+        }
+
+        try {
+            Response response = chain.proceed(request);
+            if (!mine.seal()) {
+                mine.result.complete(null);
+                return response;
+            }
+            BufferedResponse buffered = BufferedResponse.of(response);
+            mine.result.complete(buffered);
+            return buffered != null ? buffered.toResponse(request) : response;
+        } catch (IOException | RuntimeException e) {
+            mine.seal();
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static BufferedResponse await(CompletableFuture<BufferedResponse> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for coalesced Graph request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Coalesced Graph request failed", e.getCause());
+        }
+    }
+
+    /**
+     * A leader's request. Followers can join until the leader's response arrives and it seals the
+     * flight; the result is null when the response is not shared.
+     */
+    private static final class Flight {
+
+        final CompletableFuture<BufferedResponse> result = new CompletableFuture<>();
+        private int followers;
+        private boolean sealed;
+
+        synchronized boolean join() {
+            if (sealed) {
+                return false;
+            }
+            followers++;
+            return true;
+        }
+
+        /**
+         * Stops further joins and tells whether anyone joined.
+         */
+        synchronized boolean seal() {
+            sealed = true;
+            return followers > 0;
+        }
+    }
+
+    private record BufferedResponse(Protocol protocol, int code, String message, Headers headers,
+                                    MediaType mediaType, byte[] body) {
+
+        /**
+         * Buffers the response, or returns null and leaves it untouched if its body is larger
+         * than {@link #MAX_SHARED_BYTES}.
+         */
+        static BufferedResponse of(Response response) throws IOException {
+            ResponseBody body = response.body();
+            if (body == null) {
+                response.close();
+                return new BufferedResponse(response.protocol(), response.code(), response.message(),
+                        response.headers(), null, new byte[0]);
+            }
+            // The length is unknown (-1) for compressed or chunked bodies, so look ahead instead
+            ResponseBody head = response.peekBody(MAX_SHARED_BYTES + 1);
+            if (head.contentLength() > MAX_SHARED_BYTES) {
+                return null;
+            }
+            response.close();
+            return new BufferedResponse(response.protocol(), response.code(), response.message(),
+                    response.headers(), body.contentType(), head.bytes());
+        }
+
+        Response toResponse(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(code)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(body, mediaType))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.mind.graph;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latency and response size of every Graph HTTP call, tagged by endpoint.
+ *
+ * Endpoints are URL paths with IDs replaced by {@code {id}}, e.g.
+ * {@code /me/messages/{id}/createReply}, so tag cardinality stays bounded.
+ *
+ * Sizes count the body bytes the caller actually reads, through a counting source, since this
+ * interceptor sits above transparent decompression where compressed and chunked responses report
+ * no content length. A body closed before it was read to the end records what was read.
+ */
+public class GraphMetrics implements Interceptor {
+
+    // Path segments that are followed by an identifier
+    private static final Set<String> COLLECTIONS = Set.of(
+            "messages", "mailFolders", "childFolders", "attachments", "users", "subscriptions");
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> sizes = new ConcurrentHashMap<>();
+
+    public GraphMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = endpoint(request.url().pathSegments());
+        long start = System.nanoTime();
+        String status = "IO_ERROR";
+        try {
+            Response response = chain.proceed(request);
+            status = Integer.toString(response.code());
+            ResponseBody body = response.body();
+            if (body == null) {
+                return response;
+            }
+            DistributionSummary size = sizes.computeIfAbsent(endpoint, this::sizeSummary);
+            return response.newBuilder()
+                    .body(ResponseBody.create(Okio.buffer(new CountingSource(body.source(), size)),
+                            body.contentType(), body.contentLength()))
+                    .build();
+        } finally {
+            String method = request.method();
+            String key = method + " " + endpoint + " " + status;
+            String finalStatus = status;
+            timers.computeIfAbsent(key, k -> Timer.builder("graph.requests")
+                            .description("Microsoft Graph request latency")
+                            .tag("method", method)
+                            .tag("endpoint", endpoint)
+                            .tag("status", finalStatus)
+                            .publishPercentileHistogram()
+                            .register(registry))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private DistributionSummary sizeSummary(String endpoint) {
+        return DistributionSummary.builder("graph.response.size")
+                .description("Microsoft Graph response body size")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    static String endpoint(List<String> segments) {
+        StringBuilder path = new StringBuilder();
+        boolean idNext = false;
+        for (String segment : segments) {
+            if (segment.isEmpty() || path.length() == 0 && (segment.startsWith("v1") || segment.equals("beta"))) {
+                continue;
+            }
+            // Functions such as delta() and OData segments such as $value follow collections too
+            boolean id = idNext && !segment.equals("delta") && !segment.endsWith(")")
+                    && !segment.startsWith("$");
+            path.append('/').append(id ? "{id}" : segment);
+            idNext = !id && COLLECTIONS.contains(segment);
+        }
+        return path.length() > 0 ? path.toString() : "/";
+    }
+
+    /**
+     * Counts bytes read from a response body and records the total once, when the body is
+     * exhausted or closed.
+     */
+    private static final class CountingSource extends ForwardingSource {
+
+        private final DistributionSummary size;
+        private long bytes;
+        private boolean recorded;
+
+        CountingSource(Source delegate, DistributionSummary size) {
+            super(delegate);
+            this.size = size;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read == -1) {
+                record();
+            } else {
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            super.close();
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                size.record(bytes);
+            }
+        }
+    }
+}
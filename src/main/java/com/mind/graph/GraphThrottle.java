@@ -0,0 +1,120 @@
+package com.mind.graph;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Paces Graph requests with an adaptive token bucket and honors Retry-After.
+ *
+ * The refill rate backs off multiplicatively whenever Graph answers 429 or 503 and recovers
+ * additively on success. A Retry-After header pauses every request through this client until it
+ * expires, so callers wait instead of hammering an already throttled mailbox. Retries themselves
+ * are left to the SDK retry handler, which sits in front of this interceptor and marks its
+ * attempts with a Retry-Attempt header.
+ */
+public class GraphThrottle implements Interceptor {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final GraphClientStats stats;
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    public GraphThrottle(GraphClientStats stats, double maxRate, double minRate, int burst) {
+        this.stats = stats;
+        this.maxRate = maxRate;
+        this.minRate = minRate;
+        this.burst = burst;
+        this.rate = maxRate;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header("Retry-Attempt") != null) {
+            stats.recordRetried();
+        }
+
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(waitNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for Graph rate limit");
+            }
+        }
+
+        Response response = chain.proceed(request);
+        if (response.code() == 429 || response.code() == 503) {
+            stats.recordThrottled();
+            onThrottled(retryAfterNanos(response));
+        } else if (response.isSuccessful()) {
+            onSuccess();
+        }
+        return response;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Takes a token, possibly going into debt, and returns how long the caller must wait.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * rate / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+        tokens -= 1;
+
+        long wait = tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+        return Math.max(wait, pausedUntilNanos - now);
+    }
+
+    private synchronized void onThrottled(long retryAfterNanos) {
+        rate = Math.max(minRate, rate / 2);
+        if (retryAfterNanos > 0) {
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfterNanos);
+        }
+    }
+
+    private synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate / 50);
+    }
+
+    private static long retryAfterNanos(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * NANOS_PER_SECOND;
+        } catch (NumberFormatException e) {
+            // Retry-After may also be an HTTP date
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), at).toNanos());
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+    }
+}
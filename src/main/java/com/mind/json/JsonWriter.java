@@ -0,0 +1,213 @@
+package com.mind.json;
+
+/**
+ * Minimal streaming JSON writer used to build tool results.
+ *
+ * Output is appended straight into a single {@link StringBuilder}, and strings are escaped in one
+ * pass that copies unescaped runs in bulk. Control characters, unpaired surrogates and the
+ * JavaScript line separators U+2028/U+2029 are written as Unicode escapes, so the output is
+ * valid JSON and valid UTF-8 whatever the input. Separators are inserted automatically. A
+ * {@code null} string is written as {@code ""}, matching what the tools have always returned.
+ */
+public final class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_DEPTH = 32;
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final StringBuilder out;
+    // Per nesting level: true until the first element has been written
+    private final boolean[] first = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    public JsonWriter(int capacity) {
+        this.out = new StringBuilder(capacity);
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        out.append('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        out.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        out.append('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        out.append(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        separate();
+        writeString(name);
+        out.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(Object value) {
+        return value(value != null ? value.toString() : null);
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        separate();
+        out.append("null");
+        return this;
+    }
+
+    public JsonWriter field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, Object value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, double value) {
+        return name(name).value(value);
+    }
+
+    public int length() {
+        return out.length();
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    /**
+     * Escapes a single string value, including the surrounding quotes.
+     */
+    public static String quote(String value) {
+        JsonWriter writer = new JsonWriter(value != null ? value.length() + 16 : 2);
+        writer.writeString(value);
+        return writer.toString();
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting too deep");
+        }
+        first[depth++] = true;
+    }
+
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (first[depth - 1]) {
+                first[depth - 1] = false;
+            } else {
+                out.append(',');
+            }
+        }
+    }
+
+    // Unpaired surrogates cannot be encoded as UTF-8 and U+2028/U+2029 break JavaScript parsers
+    private static boolean needsEscape(String value, int i, char c) {
+        if (c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+            return true;
+        }
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 >= value.length() || !Character.isLowSurrogate(value.charAt(i + 1));
+        }
+        return Character.isLowSurrogate(c);
+    }
+
+    private void writeString(String value) {
+        out.append('"');
+        if (value != null) {
+            int length = value.length();
+            int runStart = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\' && c < LINE_SEPARATOR) {
+                    continue;
+                }
+                if (c >= LINE_SEPARATOR && !needsEscape(value, i, c)) {
+                    if (Character.isHighSurrogate(c)) {
+                        i++;
+                    }
+                    continue;
+                }
+                if (i > runStart) {
+                    out.append(value, runStart, i);
+                }
+                runStart = i + 1;
+                switch (c) {
+                    case '"' -> out.append("\\\"");
+                    case '\\' -> out.append("\\\\");
+                    case '\n' -> out.append("\\n");
+                    case '\r' -> out.append("\\r");
+                    case '\t' -> out.append("\\t");
+                    case '\b' -> out.append("\\b");
+                    case '\f' -> out.append("\\f");
+                    default -> out.append("\\u")
+                            .append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF])
+                            .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                }
+            }
+            if (runStart < length) {
+                out.append(value, runStart, length);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,280 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.models.ReferenceAttachment;
+import com.microsoft.graph.models.odataerrors.ODataError;
+import com.microsoft.kiota.HttpMethod;
+import com.microsoft.kiota.RequestInformation;
+import com.microsoft.kiota.serialization.Parsable;
+import com.microsoft.kiota.serialization.ParsableFactory;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * Local spool of attachment contents, backing read_attachment.
+ *
+ * The first read of an attachment streams its raw content ({@code /$value}) from Graph straight
+ * into a file, so the payload never sits on the heap as a whole. Reads are then served as byte
+ * ranges from a memory mapping of just the requested window. Concurrent first reads of the same
+ * attachment share one download. Spooled files are shared by all mailboxes, bounded in total size
+ * and removed after a TTL, oldest first; an expired file is never served, even before eviction
+ * gets to it. The spool only ever deletes files it could have written itself, so pointing
+ * {@code outlook.attachments.spool-dir} at a shared directory is safe.
+ */
+@Component
+public class AttachmentSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(AttachmentSpool.class);
+
+    private static final String SUFFIX = ".att";
+    // Spool file names: the SHA-256 key in hex, plus the temporary suffix while downloading
+    private static final Pattern SPOOL_FILE = Pattern.compile("[0-9a-f]{64}\\.att(\\.tmp)?");
+    private static final HashMap<String, ParsableFactory<? extends Parsable>> ERROR_MAPPING =
+            new HashMap<>(Map.of("XXX", ODataError::createFromDiscriminatorValue));
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Map<String, Spooled> spooled = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Spooled>> inFlight = new ConcurrentHashMap<>();
+
+    public AttachmentSpool(@Value("${outlook.attachments.spool-dir:${java.io.tmpdir}/outlook-mcp/attachments}") String directory,
+                           @Value("${outlook.attachments.spool-max-mb:512}") long maxMegabytes,
+                           @Value("${outlook.attachments.spool-ttl-seconds:3600}") long ttlSeconds) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxMegabytes * 1024 * 1024;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * A spooled attachment. {@code size} is the number of bytes on disk, which is authoritative
+     * over the size Graph reports in the attachment metadata.
+     */
+    public record Spooled(Path path, String name, String contentType, long size, long spooledAt) {
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        // Nothing is known about spool files from a previous run
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> SPOOL_FILE.matcher(file.getFileName().toString()).matches() && Files.isRegularFile(file))) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the spooled content of an attachment, downloading it first if needed.
+     */
+    public Spooled spool(Mailbox mailbox, String messageId, String attachmentId) throws IOException {
+        String key = key(mailbox.id(), messageId, attachmentId);
+        Spooled existing = spooled.get(key);
+        if (existing != null) {
+            if (System.currentTimeMillis() - existing.spooledAt() <= ttlMillis && Files.exists(existing.path())) {
+                return existing;
+            }
+            if (spooled.remove(key, existing)) {
+                delete(existing);
+            }
+        }
+
+        CompletableFuture<Spooled> mine = new CompletableFuture<>();
+        CompletableFuture<Spooled> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            return await(leader);
+        }
+        try {
+            Spooled result = download(mailbox, messageId, attachmentId, key);
+            spooled.put(key, result);
+            mine.complete(result);
+            evict();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Reads up to {@code length} bytes starting at {@code offset}, mapping only that window.
+     */
+    public byte[] read(Spooled attachment, long offset, int length) throws IOException {
+        long start = Math.min(Math.max(0, offset), attachment.size());
+        int count = (int) Math.min(Math.max(0, length), attachment.size() - start);
+        byte[] bytes = new byte[count];
+        if (count == 0) {
+            return bytes;
+        }
+        try (FileChannel channel = FileChannel.open(attachment.path(), StandardOpenOption.READ)) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, count);
+            window.get(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether content of this type reads naturally as text.
+     */
+    public static boolean isTextual(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.startsWith("message/")
+                || type.contains("json") || type.contains("xml") || type.contains("csv");
+    }
+
+    /**
+     * Length of {@code bytes} without a trailing UTF-8 sequence cut off by the end of the range.
+     */
+    public static int completeUtf8Length(byte[] bytes) {
+        int end = bytes.length;
+        // Find the lead byte of the last sequence, at most 3 continuation bytes back
+        int lead = end - 1;
+        while (lead >= 0 && lead > end - 4 && (bytes[lead] & 0xC0) == 0x80) {
+            lead--;
+        }
+        if (lead < 0) {
+            return end;
+        }
+        int b = bytes[lead] & 0xFF;
+        int sequence = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return lead > 0 && lead + sequence > end ? lead : end;
+    }
+
+    private Spooled download(Mailbox mailbox, String messageId, String attachmentId, String key) throws IOException {
+        Attachment attachment = mailbox.graphClient().me()
+                .messages()
+                .byMessageId(messageId)
+                .attachments()
+                .byAttachmentId(attachmentId)
+                .get(requestConfiguration -> requestConfiguration.queryParameters.select = new String[] {
+                        "id", "name", "contentType", "size" });
+        if (attachment instanceof ReferenceAttachment) {
+            throw new IOException("Linked (reference) attachments have no content to read");
+        }
+        if (attachment.getSize() != null && attachment.getSize() > maxBytes) {
+            throw new IOException("Attachment of " + attachment.getSize() + " bytes exceeds the spool limit");
+        }
+
+        Path path = directory.resolve(key + SUFFIX);
+        Path tmp = directory.resolve(key + SUFFIX + ".tmp");
+        // Item attachments come back as MIME, file attachments as their raw bytes
+        try (InputStream content = mailbox.graphClient().getRequestAdapter().sendPrimitive(
+                contentRequest(mailbox, messageId, attachmentId), ERROR_MAPPING, InputStream.class)) {
+            if (content == null) {
+                throw new IOException("Attachment has no content");
+            }
+            Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return new Spooled(path, attachment.getName(), attachment.getContentType(), Files.size(path),
+                System.currentTimeMillis());
+    }
+
+    // The SDK has no builder for an attachment's /$value, so derive it from the item request
+    private static RequestInformation contentRequest(Mailbox mailbox, String messageId, String attachmentId) {
+        RequestInformation item = mailbox.graphClient().me()
+                .messages()
+                .byMessageId(messageId)
+                .attachments()
+                .byAttachmentId(attachmentId)
+                .toGetRequestInformation();
+        String template = item.urlTemplate;
+        int query = template.indexOf("{?");
+        if (query >= 0) {
+            template = template.substring(0, query);
+        }
+        RequestInformation request = new RequestInformation(HttpMethod.GET, template + "/$value",
+                new HashMap<>(item.pathParameters));
+        request.headers.tryAdd("Accept", "application/octet-stream, application/json");
+        return request;
+    }
+
+    private void evict() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        long total = 0;
+        for (Map.Entry<String, Spooled> entry : spooled.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Spooled> e) -> e.getValue().spooledAt())
+                        .reversed())
+                .toList()) {
+            // Keep the newest files that fit the budget and have not expired
+            Spooled attachment = entry.getValue();
+            if (attachment.spooledAt() >= cutoff && total + attachment.size() <= maxBytes) {
+                total += attachment.size();
+            } else if (spooled.remove(entry.getKey(), attachment)) {
+                delete(attachment);
+            }
+        }
+    }
+
+    private static void delete(Spooled attachment) {
+        try {
+            Files.deleteIfExists(attachment.path());
+        } catch (IOException e) {
+            // A file still mapped by a reader cannot be deleted on every platform; open() cleans up
+            log.warn("Failed to delete spooled attachment {}: {}", attachment.path(), e.getMessage());
+        }
+    }
+
+    private static Spooled await(CompletableFuture<Spooled> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for attachment download");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Attachment download failed", e.getCause());
+        }
+    }
+
+    private static String key(String mailboxId, String messageId, String attachmentId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((mailboxId + '\n' + messageId + '\n' + attachmentId)
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
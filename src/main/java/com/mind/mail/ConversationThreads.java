@@ -0,0 +1,243 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.MessageCollectionResponse;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Fetches and caches whole conversations for get_thread.
+ *
+ * A conversation is read with a {@code conversationId} filter, ordered by received time, and a
+ * projection of the fields the thread shape needs. The first page reports the total count, so
+ * the remaining pages are requested concurrently by offset instead of walking next links one
+ * round-trip at a time; the ordering keeps those offsets stable from one request to the next. Both
+ * {@code body} and {@code uniqueBody} are selected, so one cached copy serves callers with and
+ * without quoted history.
+ *
+ * The cache is bounded both by conversation count and by the total number of messages it holds,
+ * evicting least recently used conversations first. Cached conversations are dropped after a TTL, when one of their messages is removed, or when
+ * a message of the conversation shows up that they do not contain yet (a new reply seen by sync
+ * or fetched by another tool).
+ */
+public class ConversationThreads implements MailboxListener {
+
+    private static final String[] THREAD_FIELDS = {
+            "id", "conversationId", "subject", "from", "toRecipients", "ccRecipients", "receivedDateTime",
+            "hasAttachments", "body", "uniqueBody" };
+
+    // Page reads wait on Graph; the mailbox's bulkhead bounds how many are in flight
+    private static final Executor VIRTUAL_THREADS = command -> Thread.ofVirtual().name("thread-page").start(command);
+
+    private final GraphServiceClient graphClient;
+    private final int pageSize;
+    private final int maxMessages;
+    private final int maxConversations;
+    private final int maxCachedMessages;
+    private final long ttlMillis;
+    // Access-ordered, so iteration starts at the least recently used conversation
+    private final Map<String, CachedConversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedMessages;
+    // message ID -> conversation ID, for the messages of cached conversations only
+    private final Map<String, String> memberships = new LinkedHashMap<>();
+
+    /**
+     * @param maxMessages       most messages read for one conversation
+     * @param maxConversations  most conversations cached
+     * @param maxCachedMessages most messages cached across all conversations
+     */
+    public ConversationThreads(GraphServiceClient graphClient, int pageSize, int maxMessages,
+                               int maxConversations, int maxCachedMessages, long ttlSeconds) {
+        this.graphClient = graphClient;
+        this.pageSize = pageSize;
+        this.maxMessages = maxMessages;
+        this.maxConversations = maxConversations;
+        this.maxCachedMessages = maxCachedMessages;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * A conversation's messages, oldest first. {@code complete} is false when the conversation
+     * holds more than {@code outlook.threads.max-messages} and only part of it was read.
+     */
+    public record Conversation(String id, List<Message> messages, int totalCount, boolean complete) {
+    }
+
+    /**
+     * Returns the conversation {@code messageId} belongs to.
+     *
+     * @param conversationId the message's conversation if already known (e.g. from the cache), or
+     *                       null to look it up
+     */
+    public Conversation get(String messageId, String conversationId) {
+        if (conversationId == null) {
+            conversationId = conversationOf(messageId);
+        }
+        synchronized (conversations) {
+            CachedConversation cached = conversations.get(conversationId);
+            if (cached != null && System.currentTimeMillis() - cached.cachedAt() <= ttlMillis) {
+                return cached.conversation();
+            }
+        }
+
+        Conversation conversation = fetch(conversationId);
+        synchronized (conversations) {
+            remove(conversationId);
+            conversations.put(conversationId,
+                    new CachedConversation(conversation, memberIds(conversation), System.currentTimeMillis()));
+            cachedMessages += conversation.messages().size();
+            for (Message message : conversation.messages()) {
+                memberships.put(message.getId(), conversationId);
+            }
+            trim(conversationId);
+        }
+        return conversation;
+    }
+
+    @Override
+    public void messageUpdated(Message message, boolean full) {
+        String conversationId = message.getConversationId();
+        if (conversationId == null) {
+            return;
+        }
+        synchronized (conversations) {
+            CachedConversation cached = conversations.get(conversationId);
+            if (cached != null && !cached.memberIds().contains(message.getId())) {
+                remove(conversationId);
+            }
+        }
+    }
+
+    @Override
+    public void messageRemoved(String id) {
+        synchronized (conversations) {
+            String conversationId = memberships.get(id);
+            if (conversationId != null) {
+                remove(conversationId);
+            }
+        }
+    }
+
+    private String conversationOf(String messageId) {
+        Message message = graphClient.me().messages().byMessageId(messageId)
+                .get(requestConfiguration -> requestConfiguration.queryParameters.select = new String[] {
+                        "id", "conversationId" });
+        if (message == null || message.getConversationId() == null) {
+            throw new IllegalStateException("Message " + messageId + " has no conversation");
+        }
+        return message.getConversationId();
+    }
+
+    private Conversation fetch(String conversationId) {
+        MessageCollectionResponse first = page(conversationId, 0, true);
+        List<Message> messages = new ArrayList<>(values(first));
+        long reported = first.getOdataCount() != null ? first.getOdataCount() : -1;
+
+        if (reported > messages.size()) {
+            // The total is known, so the remaining pages can be requested side by side
+            List<CompletableFuture<MessageCollectionResponse>> pages = new ArrayList<>();
+            for (int skip = messages.size(); skip < Math.min(reported, maxMessages); skip += pageSize) {
+                int offset = skip;
+                pages.add(CompletableFuture.supplyAsync(() -> page(conversationId, offset, false), VIRTUAL_THREADS));
+            }
+            for (CompletableFuture<MessageCollectionResponse> page : pages) {
+                messages.addAll(values(page.join()));
+            }
+        } else if (reported < 0) {
+            // No count in the response: walk the next links
+            String next = first.getOdataNextLink();
+            while (next != null && messages.size() < maxMessages) {
+                MessageCollectionResponse page = graphClient.me().messages().withUrl(next).get();
+                messages.addAll(values(page));
+                next = page.getOdataNextLink();
+            }
+        }
+
+        // Offsets can still overlap if a message arrived between page requests
+        Map<String, Message> unique = new LinkedHashMap<>();
+        for (Message message : messages) {
+            if (message.getId() != null) {
+                unique.putIfAbsent(message.getId(), message);
+            }
+        }
+        List<Message> ordered = unique.values().stream()
+                .sorted(Comparator.comparing(Message::getReceivedDateTime,
+                                Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Message::getId))
+                .limit(maxMessages)
+                .toList();
+        int total = (int) Math.max(reported, unique.size());
+        return new Conversation(conversationId, ordered, total, total <= ordered.size());
+    }
+
+    private MessageCollectionResponse page(String conversationId, int skip, boolean count) {
+        return graphClient.me().messages().get(requestConfig -> {
+            // Without an order, $skip pages come from no fixed sequence and may overlap or leave gaps.
+            // Graph only orders by a property that also leads the filter, hence the always-true bound.
+            requestConfig.queryParameters.filter = "receivedDateTime ge 1900-01-01T00:00:00Z and conversationId eq '"
+                    + conversationId.replace("'", "''") + "'";
+            requestConfig.queryParameters.orderby = new String[] { "receivedDateTime" };
+            requestConfig.queryParameters.select = THREAD_FIELDS;
+            requestConfig.queryParameters.top = Math.min(pageSize, maxMessages);
+            if (skip > 0) {
+                requestConfig.queryParameters.skip = skip;
+            }
+            if (count) {
+                requestConfig.queryParameters.count = true;
+            }
+        });
+    }
+
+    private void remove(String conversationId) {
+        CachedConversation removed = conversations.remove(conversationId);
+        if (removed != null) {
+            cachedMessages -= removed.conversation().messages().size();
+            forgetMembers(removed);
+        }
+    }
+
+    // Evicts least recently used conversations until both bounds hold, keeping the one just added
+    private void trim(String keep) {
+        // Iterating entries does not count as access, unlike get()
+        Iterator<Map.Entry<String, CachedConversation>> eldest = conversations.entrySet().iterator();
+        List<String> evict = new ArrayList<>();
+        int count = conversations.size();
+        int messages = cachedMessages;
+        while ((count > maxConversations || messages > maxCachedMessages) && eldest.hasNext()) {
+            Map.Entry<String, CachedConversation> entry = eldest.next();
+            if (!entry.getKey().equals(keep)) {
+                evict.add(entry.getKey());
+                count--;
+                messages -= entry.getValue().conversation().messages().size();
+            }
+        }
+        evict.forEach(this::remove);
+    }
+
+    private void forgetMembers(CachedConversation cached) {
+        for (String id : cached.memberIds()) {
+            memberships.remove(id, cached.conversation().id());
+        }
+    }
+
+    private static Set<String> memberIds(Conversation conversation) {
+        return conversation.messages().stream().map(Message::getId).collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static List<Message> values(MessageCollectionResponse page) {
+        return page != null && page.getValue() != null ? page.getValue() : List.of();
+    }
+
+    private record CachedConversation(Conversation conversation, Set<String> memberIds, long cachedAt) {
+    }
+}
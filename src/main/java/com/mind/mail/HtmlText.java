@@ -0,0 +1,150 @@
+package com.mind.mail;
+
+/**
+ * Fast single-pass HTML to plain text conversion for message bodies.
+ *
+ * This is not a full HTML parser: it drops tags, comments and the contents of script, style and
+ * head elements, turns block-level tags into line breaks, decodes common character references and
+ * collapses runs of whitespace. That is enough for mail bodies, which are read by models and
+ * indexed for search rather than rendered.
+ */
+public final class HtmlText {
+
+    private HtmlText() {
+    }
+
+    public static String toPlainText(String html) {
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        int length = html.length();
+        StringBuilder out = new StringBuilder(Math.min(length, 1 << 16));
+        boolean pendingSpace = false;
+        boolean pendingNewline = false;
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? length : end + 3;
+                    continue;
+                }
+                int end = html.indexOf('>', i + 1);
+                if (end < 0) {
+                    break;
+                }
+                String name = tagName(html, i + 1, end);
+                if (name.equals("script") || name.equals("style") || name.equals("head")) {
+                    int close = indexOfIgnoreCase(html, "</" + name, end + 1);
+                    int closeEnd = close < 0 ? -1 : html.indexOf('>', close);
+                    i = closeEnd < 0 ? length : closeEnd + 1;
+                    continue;
+                }
+                if (isBlock(name)) {
+                    pendingNewline = out.length() > 0;
+                } else {
+                    pendingSpace = pendingSpace || out.length() > 0;
+                }
+                i = end + 1;
+                continue;
+            }
+
+            String text;
+            if (c == '&') {
+                int semi = html.indexOf(';', i + 1);
+                String decoded = semi > 0 && semi - i <= 10 ? decodeEntity(html.substring(i + 1, semi)) : null;
+                if (decoded != null) {
+                    text = decoded;
+                    i = semi + 1;
+                } else {
+                    text = "&";
+                    i++;
+                }
+            } else {
+                text = null;
+                i++;
+            }
+
+            if (text == null && Character.isWhitespace(c) || " ".equals(text)) {
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingNewline) {
+                out.append('\n');
+            } else if (pendingSpace) {
+                out.append(' ');
+            }
+            pendingNewline = false;
+            pendingSpace = false;
+            if (text == null) {
+                out.append(c);
+            } else {
+                out.append(text);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String tagName(String html, int start, int end) {
+        int i = start;
+        if (i < end && (html.charAt(i) == '/' || html.charAt(i) == '!')) {
+            i++;
+        }
+        int nameStart = i;
+        while (i < end && Character.isLetterOrDigit(html.charAt(i))) {
+            i++;
+        }
+        return html.substring(nameStart, i).toLowerCase();
+    }
+
+    private static boolean isBlock(String name) {
+        return switch (name) {
+            case "br", "p", "div", "tr", "li", "ul", "ol", "table", "blockquote", "pre", "hr",
+                    "h1", "h2", "h3", "h4", "h5", "h6" -> true;
+            default -> false;
+        };
+    }
+
+    private static String decodeEntity(String entity) {
+        switch (entity) {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            case "nbsp":
+                return " ";
+            default:
+                break;
+        }
+        if (entity.length() > 1 && entity.charAt(0) == '#') {
+            try {
+                int codePoint = entity.charAt(1) == 'x' || entity.charAt(1) == 'X'
+                        ? Integer.parseInt(entity.substring(2), 16)
+                        : Integer.parseInt(entity.substring(1));
+                if (Character.isValidCodePoint(codePoint)) {
+                    return codePoint == 0xA0 ? " " : new String(Character.toChars(codePoint));
+                }
+            } catch (NumberFormatException ignored) {
+                // Not a character reference, keep the text as is
+            }
+        }
+        return null;
+    }
+
+    private static int indexOfIgnoreCase(String text, String needle, int from) {
+        int max = text.length() - needle.length();
+        for (int i = from; i <= max; i++) {
+            if (text.regionMatches(true, i, needle, 0, needle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,18 @@
+package com.mind.mail;
+
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.mind.search.SearchIndex;
+
+/**
+ * Everything the tools need to serve one mailbox: its Graph client, caches, sync state,
+ * search index and conversation cache. Instances are created and evicted by {@link MailboxRegistry}.
+ */
+public record Mailbox(String id,
+                      GraphServiceClient graphClient,
+                      MessageCache cache,
+                      MailboxSync sync,
+                      MessageListing listing,
+                      MessageBatch batch,
+                      SearchIndex searchIndex,
+                      ConversationThreads threads) {
+}
@@ -0,0 +1,70 @@
+package com.mind.mail;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Binds each MCP request to its mailbox before the transport dispatches it.
+ *
+ * Clients serving their own user send a Graph access token in the {@code X-Graph-Token} header;
+ * requests without one go to the default mailbox. A session stays with the mailbox it was
+ * initialized for, and a request presenting another user's token on it is refused.
+ */
+public class MailboxFilter extends OncePerRequestFilter {
+
+    public static final String TOKEN_HEADER = "X-Graph-Token";
+    private static final String SESSION_HEADER = "mcp-session-id";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final MailboxRegistry registry;
+
+    public MailboxFilter(MailboxRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (MailboxRegistry.Lease lease = registry.acquire(token(request))) {
+            if (lease == null) {
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "A valid Graph access token is required");
+                return;
+            }
+            String sessionId = request.getHeader(SESSION_HEADER);
+            if (sessionId != null && !registry.bindSession(sessionId, lease.mailbox())) {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN, "Session belongs to another mailbox");
+                return;
+            }
+
+            chain.doFilter(request, response);
+
+            if (sessionId == null) {
+                // New sessions get their ID in the initialize response
+                sessionId = response.getHeader(SESSION_HEADER);
+                if (sessionId != null) {
+                    registry.bindSession(sessionId, lease.mailbox());
+                }
+            } else if ("DELETE".equals(request.getMethod())) {
+                registry.releaseSession(sessionId);
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    private static String token(HttpServletRequest request) {
+        String header = request.getHeader(TOKEN_HEADER);
+        if (header != null && header.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            header = header.substring(BEARER_PREFIX.length());
+        }
+        return header != null ? header.trim() : null;
+    }
+}
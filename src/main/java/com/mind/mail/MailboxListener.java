@@ -0,0 +1,17 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+
+/**
+ * Receives messages as they flow into {@link MessageCache}, whether fetched by a tool or
+ * synced from Graph, and removals of messages deleted locally or upstream.
+ */
+public interface MailboxListener {
+
+    /**
+     * @param full true if the message carries its full body, false for header fields only
+     */
+    void messageUpdated(Message message, boolean full);
+
+    void messageRemoved(String id);
+}
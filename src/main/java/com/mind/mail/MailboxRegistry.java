@@ -0,0 +1,424 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.User;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.ApiException;
+import com.mind.graph.BearerTokenCredential;
+import com.mind.graph.GraphClients;
+import com.mind.search.SearchIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Pool of open mailboxes, one per Graph user.
+ *
+ * A request either brings a Graph access token for its own user or, if the default mailbox is
+ * enabled, is served by the account the server itself signed in to. A token is checked against
+ * Graph the first time it is seen and then mapped by hash to its user, so later requests cost a
+ * map lookup. The mapping lasts until the token expires and at most {@link #MAX_TOKEN_MAPPING},
+ * after which the token has to pass Graph again before the mailbox's caches serve it. Mailboxes
+ * that have had no request in flight for the idle timeout are evicted along with their caches;
+ * the default mailbox is kept for the life of the process.
+ *
+ * Memory held by cached messages is bounded for the whole process: the message budget is split
+ * evenly across {@code outlook.mailboxes.max-open} mailboxes, and each mailbox's full-message and
+ * conversation caches are capped to its share.
+ *
+ * Tool handlers run on the request thread, so the mailbox of the current request is kept in a
+ * thread local for the duration of a {@link Lease}.
+ */
+@Component
+public class MailboxRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MailboxRegistry.class);
+
+    static final String DEFAULT_MAILBOX = "me";
+    // Tokens with continuous access evaluation live up to 28h; revocation must not take that long
+    static final Duration MAX_TOKEN_MAPPING = Duration.ofHours(1);
+
+    private static final ThreadLocal<Mailbox> CURRENT = new ThreadLocal<>();
+
+    private final GraphClients graphClients;
+    private final GraphServiceClient defaultClient;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, TokenOwner> tokenOwners = new ConcurrentHashMap<>();
+    private final Map<String, SessionOwner> sessions = new ConcurrentHashMap<>();
+
+    @Value("${outlook.mailboxes.default-enabled:true}")
+    private boolean defaultEnabled;
+
+    @Value("${outlook.mailboxes.idle-timeout-seconds:900}")
+    private long idleTimeoutSeconds;
+
+    @Value("${outlook.mailboxes.max-open:200}")
+    private int maxOpen;
+
+    @Value("${outlook.mailboxes.message-budget:200000}")
+    private int messageBudget;
+
+    @Value("${outlook.cache.max-messages:500}")
+    private int maxMessages;
+
+    @Value("${outlook.cache.message-ttl-seconds:1800}")
+    private long messageTtlSeconds;
+
+    @Value("${outlook.cache.sync-folder:inbox}")
+    private String syncFolder;
+
+    @Value("${outlook.cache.staleness-seconds:30}")
+    private long stalenessSeconds;
+
+    @Value("${outlook.notifications.resync-seconds:900}")
+    private long pushStalenessSeconds;
+
+    @Value("${outlook.cache.window-days:7}")
+    private int windowDays;
+
+    @Value("${outlook.listing.page-size:50}")
+    private int pageSize;
+
+    @Value("${outlook.batch.max-concurrent:4}")
+    private int maxConcurrentBatches;
+
+    @Value("${outlook.search.index-dir:${user.home}/.outlook-mcp/index}")
+    private String indexDirectory;
+
+    @Value("${outlook.search.flush-docs:500}")
+    private int flushDocs;
+
+    @Value("${outlook.search.max-segments:8}")
+    private int maxSegments;
+
+    @Value("${outlook.threads.max-messages:250}")
+    private int maxThreadMessages;
+
+    @Value("${outlook.threads.max-cached:100}")
+    private int maxCachedThreads;
+
+    @Value("${outlook.threads.ttl-seconds:300}")
+    private long threadTtlSeconds;
+
+    private int cachedMessagesPerMailbox;
+    private int threadMessagesPerMailbox;
+    private ScheduledExecutorService evictor;
+
+    public MailboxRegistry(GraphClients graphClients, GraphServiceClient defaultClient) {
+        this.graphClients = graphClients;
+        this.defaultClient = defaultClient;
+    }
+
+    /**
+     * A mailbox checked out for one request. Closing it unbinds the mailbox from the thread and
+     * makes it eligible for eviction again.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private final boolean touch;
+
+        private Lease(Entry entry, boolean touch) {
+            this.entry = entry;
+            this.touch = touch;
+        }
+
+        public Mailbox mailbox() {
+            return entry.mailbox;
+        }
+
+        @Override
+        public void close() {
+            CURRENT.remove();
+            if (touch) {
+                entry.lastUsed = System.currentTimeMillis();
+            }
+            entry.active.decrementAndGet();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        // The default mailbox is open on top of max-open
+        int share = messageBudget / (maxOpen + 1);
+        cachedMessagesPerMailbox = Math.max(1, Math.min(maxMessages, share / 2));
+        // Room for at least one conversation of the largest size get_thread returns
+        threadMessagesPerMailbox = Math.max(maxThreadMessages, share - cachedMessagesPerMailbox);
+        log.info("Per-mailbox caches: {} full messages, {} conversation messages", cachedMessagesPerMailbox,
+                threadMessagesPerMailbox);
+
+        if (defaultEnabled) {
+            entries.put(DEFAULT_MAILBOX, open(DEFAULT_MAILBOX, defaultClient, null));
+        }
+        long period = Math.max(1, Math.min(60, idleTimeoutSeconds / 4));
+        evictor = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("mailbox-evictor").factory());
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        evictor.shutdownNow();
+        entries.values().forEach(this::close);
+        entries.clear();
+    }
+
+    /**
+     * Returns the mailbox bound to the current request.
+     */
+    public Mailbox current() {
+        Mailbox mailbox = CURRENT.get();
+        if (mailbox == null) {
+            throw new IllegalStateException("No mailbox is bound to this request");
+        }
+        return mailbox;
+    }
+
+    /**
+     * Opens or reuses the mailbox for {@code accessToken} and binds it to the calling thread.
+     *
+     * @param accessToken Graph access token sent by the client, or null to use the default mailbox
+     * @return null if the token was rejected by Graph, or no token was sent and there is no default
+     */
+    public Lease acquire(String accessToken) {
+        String id;
+        GraphServiceClient graphClient = null;
+        BearerTokenCredential credential = null;
+        if (accessToken == null || accessToken.isBlank()) {
+            if (!defaultEnabled) {
+                return null;
+            }
+            id = DEFAULT_MAILBOX;
+        } else {
+            String tokenHash = hash(accessToken);
+            TokenOwner owner = tokenOwners.get(tokenHash);
+            if (owner != null && owner.validUntil() > System.currentTimeMillis()) {
+                id = owner.mailboxId();
+            } else {
+                credential = new BearerTokenCredential(accessToken);
+                graphClient = graphClients.create(credential);
+                User user;
+                try {
+                    user = graphClient.me().get(requestConfiguration ->
+                            requestConfiguration.queryParameters.select = new String[] { "id" });
+                } catch (ApiException e) {
+                    if (e.getResponseStatusCode() == 401 || e.getResponseStatusCode() == 403) {
+                        log.debug("Graph rejected access token: {}", e.getMessage());
+                        return null;
+                    }
+                    throw e;
+                }
+                id = user.getId();
+                long validUntil = Math.min(BearerTokenCredential.expiresAt(accessToken).toInstant().toEpochMilli(),
+                        System.currentTimeMillis() + MAX_TOKEN_MAPPING.toMillis());
+                tokenOwners.put(tokenHash, new TokenOwner(id, validUntil));
+            }
+        }
+
+        if (!entries.containsKey(id) && entries.size() >= maxOpen) {
+            evictLeastRecentlyUsed();
+        }
+        GraphServiceClient client = graphClient;
+        BearerTokenCredential newCredential = credential;
+        Entry entry = entries.compute(id, (key, existing) -> {
+            Entry e = existing != null ? existing : DEFAULT_MAILBOX.equals(key)
+                    ? open(key, defaultClient, null)
+                    : openForToken(key, accessToken, client, newCredential);
+            if (e.credential != null) {
+                e.credential.update(accessToken);
+            }
+            e.active.incrementAndGet();
+            e.lastUsed = System.currentTimeMillis();
+            return e;
+        });
+        CURRENT.set(entry.mailbox);
+        return new Lease(entry, true);
+    }
+
+    /**
+     * Ties an MCP session to the mailbox it was opened for.
+     *
+     * @return false if the session already belongs to a different mailbox
+     */
+    public boolean bindSession(String sessionId, Mailbox mailbox) {
+        SessionOwner owner = sessions.computeIfAbsent(sessionId, key -> new SessionOwner(mailbox.id()));
+        owner.lastSeen = System.currentTimeMillis();
+        return owner.mailboxId.equals(mailbox.id());
+    }
+
+    public void releaseSession(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public boolean hasSession(String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * IDs of the MCP sessions bound to {@code mailboxId}.
+     */
+    public List<String> sessionsOf(String mailboxId) {
+        List<String> ids = new ArrayList<>();
+        sessions.forEach((sessionId, owner) -> {
+            if (owner.mailboxId.equals(mailboxId)) {
+                ids.add(sessionId);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Checks out a mailbox that is already open, for work outside of an MCP request.
+     *
+     * @return null if the mailbox is not open
+     */
+    public Lease acquireOpen(String mailboxId) {
+        Entry[] found = new Entry[1];
+        entries.computeIfPresent(mailboxId, (key, entry) -> {
+            entry.active.incrementAndGet();
+            found[0] = entry;
+            return entry;
+        });
+        if (found[0] == null) {
+            return null;
+        }
+        CURRENT.set(found[0].mailbox);
+        // Background work does not count as use, so it never keeps an idle mailbox open
+        return new Lease(found[0], false);
+    }
+
+    /**
+     * Snapshot of the mailboxes currently open.
+     */
+    public List<Mailbox> openMailboxes() {
+        return entries.values().stream().map(entry -> entry.mailbox).toList();
+    }
+
+    private Entry openForToken(String id, String accessToken, GraphServiceClient graphClient,
+                               BearerTokenCredential credential) {
+        if (graphClient == null) {
+            // Token already known but its mailbox was evicted since
+            credential = new BearerTokenCredential(accessToken);
+            graphClient = graphClients.create(credential);
+        }
+        return open(id, graphClient, credential);
+    }
+
+    private Entry open(String id, GraphServiceClient graphClient, BearerTokenCredential credential) {
+        SearchIndex searchIndex = new SearchIndex(Paths.get(indexDirectory, id), flushDocs, maxSegments);
+        try {
+            searchIndex.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search index for mailbox " + id, e);
+        }
+        ConversationThreads threads = new ConversationThreads(graphClient, pageSize,
+                maxThreadMessages, maxCachedThreads, threadMessagesPerMailbox, threadTtlSeconds);
+        MessageCache cache = new MessageCache(cachedMessagesPerMailbox, messageTtlSeconds,
+                List.of(searchIndex, threads));
+        MailboxSync sync = new MailboxSync(graphClient, cache, syncFolder, stalenessSeconds, pushStalenessSeconds,
+                windowDays);
+        Mailbox mailbox = new Mailbox(id, graphClient, cache, sync,
+                new MessageListing(graphClient, cache, sync, pageSize),
+                new MessageBatch(graphClient, cache, maxConcurrentBatches),
+                searchIndex,
+                threads);
+        log.info("Opened mailbox {}", id);
+        return new Entry(mailbox, credential);
+    }
+
+    private void close(Entry entry) {
+        try {
+            entry.mailbox.searchIndex().close();
+        } catch (IOException e) {
+            log.warn("Failed to close search index for mailbox {}: {}", entry.mailbox.id(), e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - idleTimeoutSeconds * 1000;
+        for (String id : entries.keySet()) {
+            evictIf(id, entry -> entry.lastUsed < cutoff);
+        }
+        sessions.values().removeIf(owner -> owner.lastSeen < cutoff);
+        tokenOwners.values().removeIf(owner -> owner.validUntil() <= now);
+    }
+
+    private void evictLeastRecentlyUsed() {
+        entries.entrySet().stream()
+                .filter(e -> !DEFAULT_MAILBOX.equals(e.getKey()) && e.getValue().active.get() == 0)
+                .min(Comparator.comparingLong(e -> e.getValue().lastUsed))
+                .ifPresent(e -> evictIf(e.getKey(), entry -> true));
+    }
+
+    private void evictIf(String id, Predicate<Entry> idle) {
+        if (DEFAULT_MAILBOX.equals(id)) {
+            return;
+        }
+        // Checked and closed under the map's per-key lock, which open also runs under, so a
+        // concurrent acquire can only reopen the index directory once it has been released
+        entries.computeIfPresent(id, (key, entry) -> {
+            if (entry.active.get() == 0 && idle.test(entry)) {
+                close(entry);
+                log.info("Evicted idle mailbox {}", id);
+                return null;
+            }
+            return entry;
+        });
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        final Mailbox mailbox;
+        final BearerTokenCredential credential;
+        final AtomicInteger active = new AtomicInteger();
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Entry(Mailbox mailbox, BearerTokenCredential credential) {
+            this.mailbox = mailbox;
+            this.credential = credential;
+        }
+    }
+
+    private record TokenOwner(String mailboxId, long validUntil) {
+    }
+
+    private static final class SessionOwner {
+
+        final String mailboxId;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        SessionOwner(String mailboxId) {
+            this.mailboxId = mailboxId;
+        }
+    }
+}
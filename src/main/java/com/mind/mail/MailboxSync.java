@@ -0,0 +1,176 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.mailfolders.item.messages.delta.DeltaGetResponse;
+import com.microsoft.graph.users.item.mailfolders.item.messages.delta.DeltaRequestBuilder;
+import com.microsoft.kiota.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps {@link MessageCache} headers current using Graph delta queries on a single mail folder.
+ *
+ * Sync is pull-based: readers call {@link #ensureFresh()} and a delta round is only issued when
+ * the last one is older than the configured staleness bound. Graph only offers message delta
+ * per folder, so the synced view covers {@code outlook.cache.sync-folder} (inbox by default).
+ * While Graph change notifications are delivered for the folder, each change marks the cache
+ * stale and the much longer push staleness bound only guards against lost notifications.
+ *
+ * Concurrent readers that find the cache stale wait for a single delta round rather than each
+ * issuing one. The wait uses a {@link ReentrantLock}, not a monitor, so request handlers on
+ * virtual threads unmount while a round is in flight instead of pinning their carrier threads.
+ */
+public class MailboxSync {
+
+    private static final Logger log = LoggerFactory.getLogger(MailboxSync.class);
+
+    // conversationId lets ConversationThreads notice new replies to cached conversations
+    static final String[] HEADER_FIELDS = {
+            "id", "subject", "from", "receivedDateTime", "bodyPreview", "conversationId" };
+
+    private final GraphServiceClient graphClient;
+    private final MessageCache cache;
+    private final String folder;
+    private final long stalenessMillis;
+    private final long pushStalenessMillis;
+    private final int windowDays;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // Bumped by markStale, so a notification arriving during a round still triggers the next one
+    private final AtomicLong staleMarks = new AtomicLong();
+
+    private volatile String deltaLink;
+    private volatile long lastSyncMillis;
+    private volatile boolean pushActive;
+
+    public MailboxSync(GraphServiceClient graphClient, MessageCache cache, String folder, long stalenessSeconds,
+                       long pushStalenessSeconds, int windowDays) {
+        this.graphClient = graphClient;
+        this.cache = cache;
+        this.folder = folder;
+        this.stalenessMillis = stalenessSeconds * 1000;
+        this.pushStalenessMillis = pushStalenessSeconds * 1000;
+        this.windowDays = windowDays;
+    }
+
+    public String folder() {
+        return folder;
+    }
+
+    /**
+     * Switches to the push staleness bound while change notifications are being delivered.
+     */
+    public void setPushActive(boolean pushActive) {
+        this.pushActive = pushActive;
+    }
+
+    /**
+     * Brings the header cache up to date if it is staler than the configured bound.
+     *
+     * @return false if the cache could not be synced and callers should go to Graph directly
+     */
+    public boolean ensureFresh() {
+        if (isFresh()) {
+            return true;
+        }
+        syncLock.lock();
+        try {
+            // Another reader may have finished a round while this one waited
+            return isFresh() || syncNow();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the next {@link #ensureFresh()} call to issue a delta round.
+     */
+    public void markStale() {
+        staleMarks.incrementAndGet();
+        lastSyncMillis = 0;
+    }
+
+    private boolean isFresh() {
+        long bound = pushActive ? pushStalenessMillis : stalenessMillis;
+        return deltaLink != null && System.currentTimeMillis() - lastSyncMillis < bound;
+    }
+
+    private boolean syncNow() {
+        try {
+            sync();
+            return true;
+        } catch (ApiException e) {
+            if (e.getResponseStatusCode() == 410) {
+                // Delta token expired or was invalidated: start over from a fresh baseline
+                deltaLink = null;
+                try {
+                    sync();
+                    return true;
+                } catch (Exception retry) {
+                    log.warn("Mailbox resync failed: {}", retry.getMessage());
+                    return false;
+                }
+            }
+            log.warn("Mailbox delta sync failed: {}", e.getMessage());
+            return false;
+        } catch (Exception e) {
+            log.warn("Mailbox delta sync failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void sync() {
+        DeltaRequestBuilder delta = graphClient.me()
+                .mailFolders()
+                .byMailFolderId(folder)
+                .messages()
+                .delta();
+
+        long marks = staleMarks.get();
+        DeltaGetResponse page;
+        if (deltaLink == null) {
+            cache.clearHeaders();
+            String since = OffsetDateTime.now().minusDays(windowDays).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            page = delta.get(requestConfig -> {
+                requestConfig.queryParameters.filter = "receivedDateTime ge " + since;
+                requestConfig.queryParameters.select = HEADER_FIELDS;
+            });
+        } else {
+            page = delta.withUrl(deltaLink).get();
+        }
+
+        while (page != null) {
+            apply(page.getValue());
+            if (page.getOdataNextLink() != null) {
+                page = delta.withUrl(page.getOdataNextLink()).get();
+            } else {
+                deltaLink = page.getOdataDeltaLink();
+                break;
+            }
+        }
+
+        lastSyncMillis = staleMarks.get() == marks ? System.currentTimeMillis() : 0;
+        cache.pruneHeadersBefore(OffsetDateTime.now().minusDays(windowDays));
+    }
+
+    private void apply(List<Message> changes) {
+        if (changes == null) {
+            return;
+        }
+        for (Message change : changes) {
+            if (change.getAdditionalData() != null && change.getAdditionalData().containsKey("@removed")) {
+                cache.invalidate(change.getId());
+            } else {
+                cache.putHeader(change);
+                cache.invalidateMessage(change.getId());
+            }
+        }
+    }
+}
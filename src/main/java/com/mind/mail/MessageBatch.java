@@ -0,0 +1,223 @@
+package com.mind.mail;
+
+import com.microsoft.graph.core.content.BatchRequestContent;
+import com.microsoft.graph.core.content.BatchResponseContent;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.RequestInformation;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Bulk message reads and deletes packed into Graph JSON $batch requests.
+ *
+ * IDs are split into batches of at most 20 sub-requests (the Graph limit) and several batches are
+ * sent concurrently, bounded per mailbox. Graph throttles the sub-requests of a batch
+ * individually, so sub-requests answered with 429 (and, where repeating them is safe, 503/504)
+ * are sent again in a new batch after the longest Retry-After among them. Every ID gets its own
+ * {@link Result}, so one failing message never fails the whole call.
+ */
+public class MessageBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBatch.class);
+
+    static final int MAX_BATCH_SIZE = 20;
+    static final int MAX_ATTEMPTS = 4;
+    private static final long DEFAULT_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+    // Batches wait on Graph, not on CPU; the per-mailbox semaphore and bulkhead bound them
+    private static final Executor VIRTUAL_THREADS = command -> Thread.ofVirtual().name("graph-batch").start(command);
+
+    private final GraphServiceClient graphClient;
+    private final MessageCache cache;
+    private final Semaphore batchesInFlight;
+
+    public MessageBatch(GraphServiceClient graphClient, MessageCache cache, int maxConcurrentBatches) {
+        this.graphClient = graphClient;
+        this.cache = cache;
+        this.batchesInFlight = new Semaphore(maxConcurrentBatches);
+    }
+
+    /**
+     * Outcome for a single ID. {@code message} is only set for successful reads.
+     */
+    public record Result(String id, boolean success, int status, String error, Message message) {
+    }
+
+    public List<Result> getMessages(List<String> ids) {
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            Message cached = cache.getMessage(id);
+            if (cached != null) {
+                results.put(id, new Result(id, true, 200, null, cached));
+            } else {
+                results.put(id, null);
+                misses.add(id);
+            }
+        }
+
+        for (Result result : execute(misses,
+                id -> graphClient.me().messages().byMessageId(id).toGetRequestInformation(), true, true)) {
+            if (result.success()) {
+                cache.putMessage(result.message());
+            }
+            results.put(result.id(), result);
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    public List<Result> deleteMessages(List<String> ids) {
+        List<Result> results = execute(new ArrayList<>(new LinkedHashSet<>(ids)),
+                id -> graphClient.me().messages().byMessageId(id).toDeleteRequestInformation(), false, true);
+        for (Result result : results) {
+            if (result.success()) {
+                cache.invalidate(result.id());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sends prepared requests through the same batching. Each result carries the caller's key for
+     * its request in place of a message ID.
+     *
+     * @param idempotent whether a request may be repeated after a 503/504, which Graph may have
+     *                   executed; 429 answers are always retried since Graph rejected the request
+     */
+    public List<Result> send(Map<String, RequestInformation> requests, boolean parseMessages, boolean idempotent) {
+        return execute(new ArrayList<>(requests.keySet()), requests::get, parseMessages, idempotent);
+    }
+
+    private List<Result> execute(List<String> ids, Function<String, RequestInformation> toRequest,
+                                 boolean parseMessage, boolean idempotent) {
+        List<CompletableFuture<List<Result>>> batches = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += MAX_BATCH_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_BATCH_SIZE));
+            batches.add(CompletableFuture.supplyAsync(
+                    () -> sendWithRetries(chunk, toRequest, parseMessage, idempotent), VIRTUAL_THREADS));
+        }
+
+        List<Result> results = new ArrayList<>(ids.size());
+        for (CompletableFuture<List<Result>> batch : batches) {
+            results.addAll(batch.join());
+        }
+        return results;
+    }
+
+    private List<Result> sendWithRetries(List<String> ids, Function<String, RequestInformation> toRequest,
+                                         boolean parseMessage, boolean idempotent) {
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<String> pending = ids;
+        for (int attempt = 1; ; attempt++) {
+            Outcome outcome = sendBatch(pending, toRequest, parseMessage, idempotent);
+            outcome.results().forEach(result -> results.put(result.id(), result));
+            if (outcome.throttled().isEmpty() || attempt == MAX_ATTEMPTS) {
+                return ids.stream().map(results::get).toList();
+            }
+            pending = outcome.throttled();
+            long waitMillis = Math.min(MAX_RETRY_MILLIS, outcome.retryAfterMillis() >= 0
+                    ? outcome.retryAfterMillis()
+                    : DEFAULT_RETRY_MILLIS << (attempt - 1));
+            log.debug("Resending {} throttled batch sub-requests in {} ms", pending.size(), waitMillis);
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ids.stream().map(results::get).toList();
+            }
+        }
+    }
+
+    // Results of one $batch round, with the IDs worth sending again and the longest Retry-After
+    // among them (-1 when Graph sent none)
+    private record Outcome(List<Result> results, List<String> throttled, long retryAfterMillis) {
+    }
+
+    private Outcome sendBatch(List<String> ids, Function<String, RequestInformation> toRequest,
+                              boolean parseMessage, boolean idempotent) {
+        List<Result> results = new ArrayList<>(ids.size());
+        List<String> throttled = new ArrayList<>();
+        long retryAfterMillis = -1;
+        try {
+            BatchRequestContent batch = new BatchRequestContent(graphClient);
+            Map<String, String> stepIds = new LinkedHashMap<>();
+            for (String id : ids) {
+                stepIds.put(id, batch.addBatchRequestStep(toRequest.apply(id)));
+            }
+
+            BatchResponseContent response;
+            batchesInFlight.acquire();
+            try {
+                response = graphClient.getBatchRequestBuilder().post(batch, null);
+            } finally {
+                batchesInFlight.release();
+            }
+            Map<String, Integer> statusCodes = response.getResponsesStatusCode();
+
+            for (Map.Entry<String, String> step : stepIds.entrySet()) {
+                String id = step.getKey();
+                Integer status = statusCodes.get(step.getValue());
+                if (status == null) {
+                    results.add(new Result(id, false, 0, "No response in batch", null));
+                } else if (status >= 200 && status < 300) {
+                    Message message = parseMessage
+                            ? response.getResponseById(step.getValue(), Message::createFromDiscriminatorValue)
+                            : null;
+                    results.add(new Result(id, true, status, null, message));
+                } else {
+                    results.add(new Result(id, false, status, errorMessage(response, step.getValue()), null));
+                    if (status == 429 || idempotent && (status == 503 || status == 504)) {
+                        throttled.add(id);
+                        retryAfterMillis = Math.max(retryAfterMillis, retryAfterMillis(response, step.getValue()));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(ids, "Interrupted");
+        } catch (Exception e) {
+            // The batch request itself failed: report it against every ID in the batch
+            return failed(ids, e.getMessage());
+        }
+        return new Outcome(results, throttled, retryAfterMillis);
+    }
+
+    private static Outcome failed(List<String> ids, String error) {
+        List<Result> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            results.add(new Result(id, false, 0, error, null));
+        }
+        return new Outcome(results, List.of(), -1);
+    }
+
+    private static long retryAfterMillis(BatchResponseContent response, String stepId) {
+        try (Response step = response.getResponseById(stepId)) {
+            String retryAfter = step != null ? step.header("Retry-After") : null;
+            return retryAfter != null ? Long.parseLong(retryAfter.trim()) * 1000 : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String errorMessage(BatchResponseContent response, String stepId) {
+        try {
+            // Deserializing an error response throws with the Graph error message
+            response.getResponseById(stepId, Message::createFromDiscriminatorValue);
+            return "Request failed";
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+}
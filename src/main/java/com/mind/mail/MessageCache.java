@@ -0,0 +1,161 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of mailbox contents.
+ *
+ * Headers (the fields listed by get_recent_emails) are kept for the whole sync window and are
+ * maintained by {@link MailboxSync}. Full messages fetched by get_email_by_id are kept in a
+ * separate LRU bounded by entry count and TTL, since bodies are what actually costs memory.
+ * Updates and removals are forwarded to the mailbox's {@link MailboxListener}s.
+ */
+public class MessageCache {
+
+    /**
+     * Listing order: newest first, ties broken by ID so every header has a stable position.
+     */
+    public static final Comparator<Message> NEWEST_FIRST = Comparator
+            .comparing((Message m) -> m.getReceivedDateTime().toInstant()).reversed()
+            .thenComparing(Message::getId, Comparator.reverseOrder());
+
+    private final Map<String, Message> headers = new ConcurrentHashMap<>();
+    private final Map<String, CachedMessage> messages;
+    private final long messageTtlMillis;
+    private final List<MailboxListener> listeners;
+
+    public MessageCache(int maxMessages, long messageTtlSeconds, List<MailboxListener> listeners) {
+        this.messageTtlMillis = messageTtlSeconds * 1000;
+        this.listeners = listeners;
+        this.messages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedMessage> eldest) {
+                return size() > maxMessages;
+            }
+        };
+    }
+
+    public Message getMessage(String id) {
+        synchronized (messages) {
+            CachedMessage cached = messages.get(id);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.cachedAt() > messageTtlMillis) {
+                messages.remove(id);
+                return null;
+            }
+            return cached.message();
+        }
+    }
+
+    public void putMessage(Message message) {
+        if (message == null || message.getId() == null) {
+            return;
+        }
+        synchronized (messages) {
+            messages.put(message.getId(), new CachedMessage(message, System.currentTimeMillis()));
+        }
+        listeners.forEach(listener -> listener.messageUpdated(message, true));
+    }
+
+    public Message getHeader(String id) {
+        return headers.get(id);
+    }
+
+    public void putHeader(Message header) {
+        if (header != null && header.getId() != null) {
+            headers.put(header.getId(), header);
+            listeners.forEach(listener -> listener.messageUpdated(header, false));
+        }
+    }
+
+    /**
+     * Returns cached headers received at or after {@code since}, newest first.
+     */
+    public List<Message> recentHeaders(OffsetDateTime since, int limit) {
+        return recentHeaders(since, null, null, limit);
+    }
+
+    /**
+     * Returns cached headers received at or after {@code since} that sort after the header at
+     * ({@code afterReceived}, {@code afterId}) in {@link #NEWEST_FIRST} order. With no position
+     * the listing starts at the newest header.
+     */
+    public List<Message> recentHeaders(OffsetDateTime since, Instant afterReceived, String afterId, int limit) {
+        return headers.values().stream()
+                .filter(m -> m.getReceivedDateTime() != null && !m.getReceivedDateTime().isBefore(since))
+                .filter(m -> afterReceived == null || isAfter(m, afterReceived, afterId))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Whether {@code message} sorts after the position ({@code received}, {@code id}) in
+     * {@link #NEWEST_FIRST} order.
+     */
+    public static boolean isAfter(Message message, Instant received, String id) {
+        int byTime = message.getReceivedDateTime().toInstant().compareTo(received);
+        return byTime < 0 || byTime == 0 && message.getId().compareTo(id) < 0;
+    }
+
+    /**
+     * Drops headers that fell out of the sync window and tells the listeners, so the search index
+     * and thread cache forget them too.
+     */
+    public void pruneHeadersBefore(OffsetDateTime cutoff) {
+        List<String> pruned = new ArrayList<>();
+        headers.values().removeIf(m -> {
+            boolean old = m.getReceivedDateTime() == null || m.getReceivedDateTime().isBefore(cutoff);
+            if (old) {
+                pruned.add(m.getId());
+            }
+            return old;
+        });
+        for (String id : pruned) {
+            listeners.forEach(listener -> listener.messageRemoved(id));
+        }
+    }
+
+    public void clearHeaders() {
+        headers.clear();
+    }
+
+    /**
+     * Drops everything known about a message, e.g. after it was deleted or changed upstream.
+     */
+    public void invalidate(String id) {
+        if (id == null) {
+            return;
+        }
+        headers.remove(id);
+        synchronized (messages) {
+            messages.remove(id);
+        }
+        listeners.forEach(listener -> listener.messageRemoved(id));
+    }
+
+    /**
+     * Drops only the full message, keeping its header for listings.
+     */
+    public void invalidateMessage(String id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (messages) {
+            messages.remove(id);
+        }
+    }
+
+    private record CachedMessage(Message message, long cachedAt) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.FileAttachment;
+import com.microsoft.graph.models.ItemAttachment;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import com.mind.json.JsonWriter;
+
+import java.util.List;
+
+/**
+ * JSON shapes for messages returned by the tools.
+ */
+public final class MessageJson {
+
+    private MessageJson() {
+    }
+
+    /**
+     * A window of a message body, in characters of the requested format.
+     */
+    public record BodySlice(String format, String content, int offset, int totalLength) {
+
+        public boolean truncated() {
+            return offset + content.length() < totalLength;
+        }
+    }
+
+    /**
+     * Cuts {@code maxLength} characters starting at {@code offset} out of the message body,
+     * converting HTML to plain text first when {@code plainText} is set.
+     */
+    public static BodySlice sliceBody(Message message, boolean plainText, int offset, int maxLength) {
+        return sliceBody(message.getBody(), plainText, offset, maxLength);
+    }
+
+    /**
+     * Same as {@link #sliceBody(Message, boolean, int, int)} for any body of a message, e.g. its
+     * {@code uniqueBody}.
+     */
+    public static BodySlice sliceBody(ItemBody itemBody, boolean plainText, int offset, int maxLength) {
+        String body = itemBody != null ? itemBody.getContent() : null;
+        if (body == null) {
+            body = "";
+        }
+        boolean html = itemBody != null && itemBody.getContentType() == BodyType.Html;
+        if (plainText && html) {
+            body = HtmlText.toPlainText(body);
+        }
+        String format = plainText || !html ? "text" : "html";
+
+        int start = Math.min(Math.max(0, offset), body.length());
+        int end = (int) Math.min(body.length(), (long) start + Math.max(0, maxLength));
+        // Never split a surrogate pair across slices
+        if (end > start && end < body.length() && Character.isHighSurrogate(body.charAt(end - 1))) {
+            end--;
+        }
+        return new BodySlice(format, body.substring(start, end), start, body.length());
+    }
+
+    /**
+     * Writes the listing shape used by get_recent_emails.
+     */
+    public static void writeHeader(JsonWriter json, Message msg) {
+        json.beginObject()
+                .field("id", msg.getId())
+                .field("subject", msg.getSubject())
+                .field("from", senderAddress(msg))
+                .field("date", msg.getReceivedDateTime())
+                .field("bodyPreview", msg.getBodyPreview())
+                .endObject();
+    }
+
+    /**
+     * Writes the full shape used by get_email_by_id.
+     */
+    public static void writeMessage(JsonWriter json, Message message) {
+        writeMessage(json, message, null);
+    }
+
+    /**
+     * Writes the full shape with only a slice of the body, plus where the slice sits in the whole
+     * body. A {@code nextOffset} field is present when more of the body remains.
+     */
+    public static void writeMessage(JsonWriter json, Message message, BodySlice body) {
+        json.beginObject()
+                .field("id", message.getId())
+                .field("subject", message.getSubject())
+                .field("from", senderAddress(message))
+                .name("to").beginArray();
+        if (message.getToRecipients() != null) {
+            for (Recipient r : message.getToRecipients()) {
+                json.value(r.getEmailAddress() != null ? r.getEmailAddress().getAddress() : null);
+            }
+        }
+        json.endArray()
+                .field("date", message.getReceivedDateTime())
+                .field("body", body != null ? body.content() : bodyContent(message))
+                .field("hasAttachments", Boolean.TRUE.equals(message.getHasAttachments()));
+        if (body != null) {
+            json.field("bodyFormat", body.format())
+                    .field("bodyOffset", body.offset())
+                    .field("bodyLength", body.totalLength());
+            if (body.truncated()) {
+                json.field("nextOffset", body.offset() + body.content().length());
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Writes the per-message shape used by get_thread. Bodies longer than the slice are marked
+     * {@code bodyTruncated}; get_email_by_id reads the whole message.
+     */
+    public static void writeThreadMessage(JsonWriter json, Message message, BodySlice body) {
+        json.beginObject()
+                .field("id", message.getId())
+                .field("subject", message.getSubject())
+                .field("from", senderAddress(message));
+        writeAddresses(json, "to", message.getToRecipients());
+        writeAddresses(json, "cc", message.getCcRecipients());
+        json.field("date", message.getReceivedDateTime())
+                .field("body", body.content())
+                .field("bodyFormat", body.format())
+                .field("bodyTruncated", body.truncated())
+                .field("hasAttachments", Boolean.TRUE.equals(message.getHasAttachments()))
+                .endObject();
+    }
+
+    /**
+     * Writes the attachment shape used by list_attachments. {@code type} is file, item (an
+     * attached message or event) or reference (a link to a file stored elsewhere).
+     */
+    public static void writeAttachment(JsonWriter json, Attachment attachment) {
+        String type = attachment instanceof FileAttachment ? "file"
+                : attachment instanceof ItemAttachment ? "item"
+                : "reference";
+        json.beginObject()
+                .field("id", attachment.getId())
+                .field("name", attachment.getName())
+                .field("contentType", attachment.getContentType())
+                .field("size", attachment.getSize() != null ? attachment.getSize() : 0)
+                .field("isInline", Boolean.TRUE.equals(attachment.getIsInline()))
+                .field("type", type)
+                .endObject();
+    }
+
+    /**
+     * Rough serialized size of a full message, used to presize the output buffer.
+     */
+    public static int estimateSize(Message message) {
+        String body = bodyContent(message);
+        return (body != null ? body.length() : 0) + 1024;
+    }
+
+    public static int estimateSize(BodySlice body) {
+        return body.content().length() + 1024;
+    }
+
+    public static String senderAddress(Message message) {
+        return message.getFrom() != null && message.getFrom().getEmailAddress() != null
+                ? message.getFrom().getEmailAddress().getAddress()
+                : "unknown";
+    }
+
+    private static void writeAddresses(JsonWriter json, String name, List<Recipient> recipients) {
+        json.name(name).beginArray();
+        if (recipients != null) {
+            for (Recipient r : recipients) {
+                json.value(r.getEmailAddress() != null ? r.getEmailAddress().getAddress() : null);
+            }
+        }
+        json.endArray();
+    }
+
+    private static String bodyContent(Message message) {
+        return message.getBody() != null ? message.getBody().getContent() : "";
+    }
+}
@@ -0,0 +1,224 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.MessageCollectionResponse;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.mailfolders.item.messages.MessagesRequestBuilder;
+import com.microsoft.kiota.RequestInformation;
+import com.mind.json.JsonWriter;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Lists recent messages page by page for get_recent_emails.
+ *
+ * Messages are written to the result as each page arrives, so only one page of Graph models is
+ * held at a time. Listings stop at the requested limit and hand back an opaque cursor to resume.
+ * Inside the cache the cursor is the (received time, ID) position of the last message returned,
+ * so messages arriving between calls neither shift the window nor repeat. Graph page links never
+ * leave the server: a Graph cursor is a random key into a short-lived per-mailbox table, so a
+ * client cannot make the server fetch a URL of its choosing.
+ */
+public class MessageListing {
+
+    private static final String CACHE_CURSOR = "c";
+    private static final String GRAPH_CURSOR = "g";
+    private static final int MAX_GRAPH_CURSORS = 256;
+    private static final long GRAPH_CURSOR_TTL_MILLIS = 30 * 60 * 1000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final GraphServiceClient graphClient;
+    private final MessageCache cache;
+    private final MailboxSync mailboxSync;
+    private final int pageSize;
+    private final Map<String, GraphPosition> graphCursors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GraphPosition> eldest) {
+            return size() > MAX_GRAPH_CURSORS;
+        }
+    };
+
+    public MessageListing(GraphServiceClient graphClient, MessageCache cache, MailboxSync mailboxSync,
+                          int pageSize) {
+        this.graphClient = graphClient;
+        this.cache = cache;
+        this.mailboxSync = mailboxSync;
+        this.pageSize = pageSize;
+    }
+
+    public record Page(String json, String nextCursor) {
+    }
+
+    // A Graph page link and how many of its messages were already returned
+    private record GraphPosition(String url, int skip, long createdAt) {
+    }
+
+    /**
+     * Lists up to {@code limit} messages of the synced folder from the last week, newest first.
+     *
+     * @param cursor   cursor returned by a previous call, or null to start from the newest message
+     * @param progress called with the running message count after each page
+     */
+    public Page list(int limit, String cursor, IntConsumer progress) throws URISyntaxException {
+        String[] resume = decode(cursor);
+        if (resume != null && GRAPH_CURSOR.equals(resume[0])) {
+            GraphPosition position = graphPosition(resume[1]);
+            return fromGraph(limit, position.url(), position.skip(), null, null, progress);
+        }
+
+        OffsetDateTime since = OffsetDateTime.now().minusWeeks(1);
+        Instant afterReceived = null;
+        String afterId = null;
+        if (resume != null) {
+            try {
+                since = Instant.ofEpochMilli(Long.parseLong(resume[1])).atOffset(ZoneOffset.UTC);
+                afterReceived = Instant.parse(resume[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            afterId = resume[3];
+        }
+
+        if (mailboxSync.ensureFresh()) {
+            return fromCache(limit, since, afterReceived, afterId, progress);
+        }
+        return fromGraph(limit, firstPageUrl(since, limit, afterReceived), 0, afterReceived, afterId, progress);
+    }
+
+    private Page fromCache(int limit, OffsetDateTime since, Instant afterReceived, String afterId,
+                           IntConsumer progress) {
+        // Fetch one extra header to know whether another page exists
+        List<Message> headers = cache.recentHeaders(since, afterReceived, afterId, limit + 1);
+        int end = Math.min(headers.size(), limit);
+        JsonWriter json = new JsonWriter(512 * end + 2).beginArray();
+        for (int i = 0; i < end; i++) {
+            MessageJson.writeHeader(json, headers.get(i));
+        }
+        progress.accept(end);
+
+        String nextCursor = null;
+        if (headers.size() > end && end > 0) {
+            Message last = headers.get(end - 1);
+            nextCursor = encode(CACHE_CURSOR, Long.toString(since.toInstant().toEpochMilli()),
+                    last.getReceivedDateTime().toInstant().toString(), last.getId());
+        }
+        return new Page(json.endArray().toString(), nextCursor);
+    }
+
+    private Page fromGraph(int limit, String url, int skip, Instant afterReceived, String afterId,
+                           IntConsumer progress) {
+        MessagesRequestBuilder messages = folderMessages();
+        JsonWriter json = new JsonWriter(512 * Math.min(limit, pageSize) + 2).beginArray();
+        String nextCursor = null;
+        int count = 0;
+
+        while (url != null) {
+            MessageCollectionResponse page = messages.withUrl(url).get();
+            List<Message> items = page.getValue() != null ? page.getValue() : List.of();
+
+            int i = skip;
+            for (; i < items.size() && count < limit; i++) {
+                Message item = items.get(i);
+                // Resuming a cache cursor: Graph returns the boundary timestamp again
+                if (afterReceived != null && (item.getReceivedDateTime() == null || item.getId() == null
+                        || !MessageCache.isAfter(item, afterReceived, afterId))) {
+                    continue;
+                }
+                MessageJson.writeHeader(json, item);
+                count++;
+            }
+            progress.accept(count);
+
+            if (count >= limit) {
+                if (i < items.size()) {
+                    nextCursor = graphCursor(url, i);
+                } else if (page.getOdataNextLink() != null) {
+                    nextCursor = graphCursor(page.getOdataNextLink(), 0);
+                }
+                break;
+            }
+            url = page.getOdataNextLink();
+            skip = 0;
+        }
+
+        return new Page(json.endArray().toString(), nextCursor);
+    }
+
+    private String firstPageUrl(OffsetDateTime since, int limit, Instant afterReceived) throws URISyntaxException {
+        String filter = "receivedDateTime ge " + since.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        if (afterReceived != null) {
+            filter += " and receivedDateTime le "
+                    + afterReceived.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        }
+        String finalFilter = filter;
+        // Same folder as the cache, so a failed sync does not change what the listing covers
+        RequestInformation request = folderMessages().toGetRequestInformation(requestConfig -> {
+            requestConfig.queryParameters.filter = finalFilter;
+            requestConfig.queryParameters.top = Math.min(limit, pageSize);
+            requestConfig.queryParameters.orderby = new String[] { "receivedDateTime DESC" };
+            requestConfig.queryParameters.select = MailboxSync.HEADER_FIELDS;
+        });
+        request.pathParameters.put("baseurl", graphClient.getRequestAdapter().getBaseUrl());
+        return request.getUri().toString();
+    }
+
+    private MessagesRequestBuilder folderMessages() {
+        return graphClient.me().mailFolders().byMailFolderId(mailboxSync.folder()).messages();
+    }
+
+    private String graphCursor(String url, int skip) {
+        byte[] key = new byte[18];
+        RANDOM.nextBytes(key);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(key);
+        synchronized (graphCursors) {
+            graphCursors.put(id, new GraphPosition(url, skip, System.currentTimeMillis()));
+        }
+        return encode(GRAPH_CURSOR, id);
+    }
+
+    private GraphPosition graphPosition(String id) {
+        GraphPosition position;
+        synchronized (graphCursors) {
+            position = graphCursors.get(id);
+        }
+        if (position == null || System.currentTimeMillis() - position.createdAt() > GRAPH_CURSOR_TTL_MILLIS) {
+            throw new IllegalArgumentException("Cursor has expired; start the listing again without a cursor");
+        }
+        return position;
+    }
+
+    static String encode(String... parts) {
+        String raw = String.join("|", parts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String[] parts = raw.split("\\|", 4);
+        boolean valid = CACHE_CURSOR.equals(parts[0]) ? parts.length == 4
+                : GRAPH_CURSOR.equals(parts[0]) && parts.length == 2;
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return parts;
+    }
+}
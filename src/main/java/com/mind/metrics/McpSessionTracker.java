@@ -0,0 +1,84 @@
+package com.mind.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts active MCP sessions for the {@code mcp.sessions.active} gauge.
+ *
+ * The transport does not expose its sessions, so they are tracked from the {@code mcp-session-id}
+ * header: a session is active from its first request until the client deletes it or it has been
+ * idle for the configured timeout. Idle sessions are pruned on a timer, so clients that vanish
+ * without deleting their session do not pile up between scrapes.
+ */
+public class McpSessionTracker extends OncePerRequestFilter {
+
+    private static final String SESSION_HEADER = "mcp-session-id";
+
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService pruner;
+
+    public McpSessionTracker(MeterRegistry registry, long idleTimeoutSeconds) {
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000;
+        Gauge.builder("mcp.sessions.active", this, McpSessionTracker::activeSessions)
+                .description("MCP sessions seen within the idle timeout")
+                .register(registry);
+        long period = Math.max(1, Math.min(60, idleTimeoutSeconds / 4));
+        pruner = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("mcp-session-pruner").factory());
+        pruner.scheduleWithFixedDelay(this::pruneIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        pruner.shutdownNow();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            String sessionId = request.getHeader(SESSION_HEADER);
+            if (sessionId == null) {
+                // New sessions get their ID in the initialize response
+                sessionId = response.getHeader(SESSION_HEADER);
+            }
+            if (sessionId != null) {
+                if ("DELETE".equals(request.getMethod())) {
+                    lastSeen.remove(sessionId);
+                } else {
+                    lastSeen.put(sessionId, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    private double activeSessions() {
+        pruneIdle();
+        return lastSeen.size();
+    }
+
+    private void pruneIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        lastSeen.values().removeIf(seen -> seen < cutoff);
+    }
+}
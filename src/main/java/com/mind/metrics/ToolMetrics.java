@@ -0,0 +1,73 @@
+package com.mind.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
+import io.modelcontextprotocol.spec.McpSchema.CallToolRequest;
+import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
+import io.modelcontextprotocol.spec.McpSchema.Content;
+import io.modelcontextprotocol.spec.McpSchema.TextContent;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Records latency, outcome and result size of every MCP tool call.
+ *
+ * Meters are resolved once per tool when its handler is wrapped, so a call only pays for a clock
+ * read and a few atomic updates.
+ */
+@Component
+public class ToolMetrics {
+
+    private final MeterRegistry registry;
+
+    public ToolMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public BiFunction<McpSyncServerExchange, CallToolRequest, CallToolResult> timed(
+            String tool, BiFunction<McpSyncServerExchange, CallToolRequest, CallToolResult> handler) {
+        Timer success = timer(tool, "success");
+        Timer error = timer(tool, "error");
+        DistributionSummary resultSize = DistributionSummary.builder("mcp.tool.result.size")
+                .description("Serialized size of MCP tool results")
+                .baseUnit("characters")
+                .tag("tool", tool)
+                .publishPercentileHistogram()
+                .register(registry);
+
+        return (exchange, request) -> {
+            long start = System.nanoTime();
+            CallToolResult result = null;
+            try {
+                result = handler.apply(exchange, request);
+                return result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                boolean failed = result == null || Boolean.TRUE.equals(result.isError());
+                (failed ? error : success).record(elapsed, TimeUnit.NANOSECONDS);
+                if (result != null && result.content() != null) {
+                    long size = 0;
+                    for (Content content : result.content()) {
+                        if (content instanceof TextContent text && text.text() != null) {
+                            size += text.text().length();
+                        }
+                    }
+                    resultSize.record(size);
+                }
+            }
+        };
+    }
+
+    private Timer timer(String tool, String outcome) {
+        return Timer.builder("mcp.tool.calls")
+                .description("MCP tool call latency")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mind.notify;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives Graph change notifications.
+ *
+ * Graph expects an answer within a few seconds, so notifications are acknowledged with 202 as
+ * soon as the payload is parsed and applied on a separate virtual thread. Subscription validation
+ * requests are answered by echoing the validation token as plain text.
+ */
+public class GraphWebhookServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphWebhookServlet.class);
+
+    private final MailSubscriptions subscriptions;
+    private final ObjectMapper objectMapper;
+
+    public GraphWebhookServlet(MailSubscriptions subscriptions, ObjectMapper objectMapper) {
+        this.subscriptions = subscriptions;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String validationToken = request.getParameter("validationToken");
+        if (validationToken != null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/plain");
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(validationToken);
+            return;
+        }
+
+        JsonNode payload;
+        try {
+            payload = objectMapper.readTree(request.getInputStream());
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed notification payload");
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        Thread.ofVirtual().name("graph-notification").start(() -> {
+            try {
+                subscriptions.handle(payload);
+            } catch (Exception e) {
+                log.warn("Failed to apply change notifications: {}", e.getMessage());
+            }
+        });
+    }
+}
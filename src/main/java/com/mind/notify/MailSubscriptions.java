@@ -0,0 +1,245 @@
+package com.mind.notify;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.microsoft.graph.models.Subscription;
+import com.mind.mail.Mailbox;
+import com.mind.mail.MailboxRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Graph change-notification subscriptions on the synced folder of every open mailbox.
+ *
+ * A reconcile pass subscribes newly opened mailboxes, renews subscriptions past half their
+ * lifetime and removes those of evicted mailboxes. Notifications received by
+ * {@link GraphWebhookServlet} invalidate the affected cache entries, run a delta round so the
+ * cache already holds the change, and are then passed on to change listeners. While a mailbox is
+ * subscribed its sync only polls as a safety net for lost notifications.
+ *
+ * Disabled unless {@code outlook.notifications.public-url} is set, since Graph must be able to
+ * reach the webhook.
+ */
+@Component
+public class MailSubscriptions {
+
+    private static final Logger log = LoggerFactory.getLogger(MailSubscriptions.class);
+
+    public static final String WEBHOOK_PATH = "/notifications/graph";
+    private static final String CHANGE_TYPES = "created,updated,deleted";
+
+    private final MailboxRegistry mailboxes;
+    private final Map<String, Active> byId = new ConcurrentHashMap<>();
+    private final Map<String, Active> byMailbox = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${outlook.notifications.public-url:}")
+    private String publicUrl;
+
+    @Value("${outlook.notifications.client-state:}")
+    private String clientState;
+
+    @Value("${outlook.notifications.lifetime-minutes:60}")
+    private long lifetimeMinutes;
+
+    private ScheduledExecutorService reconciler;
+
+    public MailSubscriptions(MailboxRegistry mailboxes) {
+        this.mailboxes = mailboxes;
+    }
+
+    private record Active(String id, Mailbox mailbox, OffsetDateTime expires) {
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled()) {
+            log.info("Change notifications disabled; mailboxes are kept current by polling");
+            return;
+        }
+        if (clientState.isBlank()) {
+            clientState = UUID.randomUUID().toString();
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofVirtual().name("graph-subscriptions").factory());
+        reconciler.scheduleWithFixedDelay(this::reconcile, 0, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reconciler == null) {
+            return;
+        }
+        reconciler.shutdownNow();
+        List.copyOf(byMailbox.values()).forEach(this::delete);
+    }
+
+    public boolean enabled() {
+        return !publicUrl.isBlank();
+    }
+
+    /**
+     * Registers a callback that receives the ID of a mailbox after a change was applied to it.
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies a notification payload ({@code {"value": [...]}}) posted to the webhook.
+     */
+    public void handle(JsonNode payload) {
+        // mailbox ID -> changes, so each mailbox syncs once per payload
+        Map<String, List<JsonNode>> changes = new LinkedHashMap<>();
+        for (JsonNode notification : payload.path("value")) {
+            Active subscription = byId.get(notification.path("subscriptionId").asText());
+            if (subscription == null) {
+                log.debug("Notification for unknown subscription {}", notification.path("subscriptionId").asText());
+                continue;
+            }
+            if (!clientStateMatches(notification.path("clientState").asText())) {
+                log.warn("Dropping notification with wrong clientState for subscription {}", subscription.id());
+                continue;
+            }
+            changes.computeIfAbsent(subscription.mailbox().id(), key -> new ArrayList<>()).add(notification);
+        }
+        changes.forEach(this::apply);
+    }
+
+    private void apply(String mailboxId, List<JsonNode> notifications) {
+        try (MailboxRegistry.Lease lease = mailboxes.acquireOpen(mailboxId)) {
+            if (lease == null) {
+                return;
+            }
+            Mailbox mailbox = lease.mailbox();
+            for (JsonNode notification : notifications) {
+                String messageId = notification.path("resourceData").path("id").asText(null);
+                if ("deleted".equals(notification.path("changeType").asText())) {
+                    mailbox.cache().invalidate(messageId);
+                } else {
+                    mailbox.cache().invalidateMessage(messageId);
+                }
+            }
+            mailbox.sync().markStale();
+            mailbox.sync().ensureFresh();
+        }
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(mailboxId);
+            } catch (RuntimeException e) {
+                log.warn("Change listener failed for mailbox {}: {}", mailboxId, e.getMessage());
+            }
+        }
+    }
+
+    private void reconcile() {
+        Set<String> open = new HashSet<>();
+        for (Mailbox mailbox : mailboxes.openMailboxes()) {
+            open.add(mailbox.id());
+            Active subscription = byMailbox.get(mailbox.id());
+            try {
+                if (subscription != null && subscription.mailbox() != mailbox) {
+                    // Evicted and reopened since: move the subscription to the new instance
+                    delete(subscription);
+                    subscription = null;
+                }
+                if (subscription == null) {
+                    subscribe(mailbox);
+                } else if (subscription.expires().isBefore(OffsetDateTime.now().plusMinutes(lifetimeMinutes / 2))) {
+                    renew(subscription);
+                }
+            } catch (Exception e) {
+                // Polling keeps the mailbox current until the next pass succeeds
+                log.warn("Subscription upkeep failed for mailbox {}: {}", mailbox.id(), e.getMessage());
+                if (subscription != null && subscription.expires().isBefore(OffsetDateTime.now())) {
+                    forget(subscription);
+                }
+            }
+        }
+        for (Active subscription : List.copyOf(byMailbox.values())) {
+            if (!open.contains(subscription.mailbox().id())) {
+                delete(subscription);
+            }
+        }
+    }
+
+    private void subscribe(Mailbox mailbox) {
+        Subscription request = new Subscription();
+        request.setChangeType(CHANGE_TYPES);
+        request.setNotificationUrl(stripTrailingSlash(publicUrl) + WEBHOOK_PATH);
+        request.setResource("me/mailFolders('" + mailbox.sync().folder() + "')/messages");
+        request.setExpirationDateTime(OffsetDateTime.now().plusMinutes(lifetimeMinutes));
+        request.setClientState(clientState);
+
+        // Graph calls the webhook with a validation token before this returns
+        Subscription created = mailbox.graphClient().subscriptions().post(request);
+        Active subscription = new Active(created.getId(), mailbox, expiry(created, request));
+        byId.put(subscription.id(), subscription);
+        byMailbox.put(mailbox.id(), subscription);
+        mailbox.sync().setPushActive(true);
+        log.info("Subscribed to changes of mailbox {} as subscription {}", mailbox.id(), subscription.id());
+    }
+
+    private void renew(Active subscription) {
+        Subscription update = new Subscription();
+        update.setExpirationDateTime(OffsetDateTime.now().plusMinutes(lifetimeMinutes));
+        Subscription renewed = subscription.mailbox().graphClient().subscriptions()
+                .bySubscriptionId(subscription.id())
+                .patch(update);
+        Active active = new Active(subscription.id(), subscription.mailbox(), expiry(renewed, update));
+        byId.put(active.id(), active);
+        byMailbox.put(active.mailbox().id(), active);
+    }
+
+    private void delete(Active subscription) {
+        forget(subscription);
+        try {
+            subscription.mailbox().graphClient().subscriptions().bySubscriptionId(subscription.id()).delete();
+        } catch (Exception e) {
+            // It expires on its own
+            log.debug("Failed to delete subscription {}: {}", subscription.id(), e.getMessage());
+        }
+    }
+
+    private void forget(Active subscription) {
+        byId.remove(subscription.id());
+        byMailbox.remove(subscription.mailbox().id(), subscription);
+        subscription.mailbox().sync().setPushActive(false);
+    }
+
+    private static OffsetDateTime expiry(Subscription response, Subscription request) {
+        // Graph may shorten the requested lifetime; trust its answer when there is one
+        return response != null && response.getExpirationDateTime() != null
+                ? response.getExpirationDateTime()
+                : request.getExpirationDateTime();
+    }
+
+    private boolean clientStateMatches(String received) {
+        return MessageDigest.isEqual(clientState.getBytes(StandardCharsets.UTF_8),
+                received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,100 @@
+package com.mind.notify;
+
+import com.mind.mail.MailboxRegistry;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpStreamableServerSession;
+import io.modelcontextprotocol.spec.McpStreamableServerTransportProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends {@code resources/updated} only to the MCP sessions of the mailbox that changed.
+ *
+ * The server's own notification methods broadcast to every session, which would tell each user
+ * about every other user's mail. This wraps the transport provider to keep a handle on each
+ * session the server starts, and looks up which sessions belong to a mailbox in
+ * {@link MailboxRegistry}. Sessions the registry no longer knows (deleted or idle) are dropped.
+ */
+public class ResourceNotifier implements McpStreamableServerTransportProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceNotifier.class);
+
+    // A session is bound to its mailbox right after the initialize response; until then it is kept
+    private static final long BIND_GRACE_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(10);
+
+    private final McpStreamableServerTransportProvider delegate;
+    private final MailboxRegistry mailboxes;
+    private final Map<String, Started> sessions = new ConcurrentHashMap<>();
+
+    public ResourceNotifier(McpStreamableServerTransportProvider delegate, MailboxRegistry mailboxes) {
+        this.delegate = delegate;
+        this.mailboxes = mailboxes;
+    }
+
+    private record Started(McpStreamableServerSession session, long startedAt) {
+    }
+
+    @Override
+    public void setSessionFactory(McpStreamableServerSession.Factory factory) {
+        delegate.setSessionFactory(request -> {
+            McpStreamableServerSession.McpStreamableServerSessionInit init = factory.startSession(request);
+            sessions.put(init.session().getId(), new Started(init.session(), System.currentTimeMillis()));
+            return init;
+        });
+    }
+
+    /**
+     * Notifies the sessions bound to {@code mailboxId} that the resource at {@code uri} changed.
+     */
+    public void resourceUpdated(String mailboxId, String uri) {
+        prune();
+        McpSchema.ResourcesUpdatedNotification notification = new McpSchema.ResourcesUpdatedNotification(uri);
+        List<Mono<Void>> sends = new ArrayList<>();
+        for (String sessionId : mailboxes.sessionsOf(mailboxId)) {
+            Started started = sessions.get(sessionId);
+            if (started != null) {
+                sends.add(started.session()
+                        .sendNotification(McpSchema.METHOD_NOTIFICATION_RESOURCES_UPDATED, notification)
+                        .onErrorResume(e -> {
+                            log.debug("Failed to notify session {}: {}", sessionId, e.getMessage());
+                            return Mono.empty();
+                        }));
+            }
+        }
+        Mono.when(sends).timeout(SEND_TIMEOUT, Mono.empty()).block();
+    }
+
+    @Override
+    public Mono<Void> notifyClients(String method, Object params) {
+        return delegate.notifyClients(method, params);
+    }
+
+    @Override
+    public Mono<Void> closeGracefully() {
+        return delegate.closeGracefully();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public List<String> protocolVersions() {
+        return delegate.protocolVersions();
+    }
+
+    private void prune() {
+        long cutoff = System.currentTimeMillis() - BIND_GRACE_MILLIS;
+        sessions.entrySet().removeIf(entry -> entry.getValue().startedAt() < cutoff
+                && !mailboxes.hasSession(entry.getKey()));
+    }
+}
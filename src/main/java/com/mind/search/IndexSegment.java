@@ -0,0 +1,185 @@
+package com.mind.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Immutable on-disk segment of the inverted index, read through a memory mapping.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header    magic, version, minGeneration, maxOrdinal, termCount   (5 x int)
+ * entries   termCount x (termOffset, postingsOffset, postingsCount) (3 x int, sorted by term)
+ * terms     termCount x (length short, UTF-8 bytes)
+ * postings  (ordinal int, frequency int) pairs
+ * </pre>
+ * Fixed-width entries allow binary search on the mapped file without loading the dictionary.
+ * {@code minGeneration} is the oldest segment merged into this one, which lets startup discard
+ * segments left behind by an interrupted merge.
+ */
+final class IndexSegment {
+
+    private static final int MAGIC = 0x4F4D4958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_SIZE = 12;
+
+    interface PostingVisitor {
+        void visit(int ordinal, int frequency);
+    }
+
+    interface TermVisitor {
+        void visit(String term, int ordinal, int frequency);
+    }
+
+    private final Path path;
+    private final int generation;
+    private final int minGeneration;
+    private final int maxOrdinal;
+    private final int termCount;
+    private final MappedByteBuffer buffer;
+
+    private IndexSegment(Path path, int generation, MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment: " + path);
+        }
+        this.path = path;
+        this.generation = generation;
+        this.buffer = buffer;
+        this.minGeneration = buffer.getInt(8);
+        this.maxOrdinal = buffer.getInt(12);
+        this.termCount = buffer.getInt(16);
+    }
+
+    static IndexSegment open(Path path, int generation) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new IndexSegment(path, generation, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static void write(Path path, int minGeneration, int maxOrdinal, SortedMap<String, IntList> postings)
+            throws IOException {
+        int termCount = postings.size();
+        List<byte[]> terms = new ArrayList<>(termCount);
+        int termsSize = 0;
+        for (String term : postings.keySet()) {
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+            terms.add(bytes);
+            termsSize += 2 + bytes.length;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(minGeneration);
+            out.writeInt(maxOrdinal);
+            out.writeInt(termCount);
+
+            int termOffset = HEADER_SIZE + termCount * ENTRY_SIZE;
+            int postingsOffset = termOffset + termsSize;
+            int i = 0;
+            for (IntList list : postings.values()) {
+                out.writeInt(termOffset);
+                out.writeInt(postingsOffset);
+                out.writeInt(list.size() / 2);
+                termOffset += 2 + terms.get(i++).length;
+                postingsOffset += list.size() * 4;
+            }
+            for (byte[] term : terms) {
+                out.writeShort(term.length);
+                out.write(term);
+            }
+            for (IntList list : postings.values()) {
+                for (int j = 0; j < list.size(); j++) {
+                    out.writeInt(list.get(j));
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    int minGeneration() {
+        return minGeneration;
+    }
+
+    int maxOrdinal() {
+        return maxOrdinal;
+    }
+
+    int docFrequency(String term) {
+        int entry = find(term);
+        return entry < 0 ? 0 : buffer.getInt(entryOffset(entry) + 8);
+    }
+
+    void postings(String term, PostingVisitor visitor) {
+        int entry = find(term);
+        if (entry >= 0) {
+            visitPostings(entry, visitor);
+        }
+    }
+
+    void forEach(TermVisitor visitor) {
+        for (int entry = 0; entry < termCount; entry++) {
+            String term = termAt(entry);
+            visitPostings(entry, (ordinal, frequency) -> visitor.visit(term, ordinal, frequency));
+        }
+    }
+
+    private void visitPostings(int entry, PostingVisitor visitor) {
+        int offset = buffer.getInt(entryOffset(entry) + 4);
+        int count = buffer.getInt(entryOffset(entry) + 8);
+        for (int i = 0; i < count; i++) {
+            int position = offset + i * 8;
+            visitor.visit(buffer.getInt(position), buffer.getInt(position + 4));
+        }
+    }
+
+    private int find(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = termAt(mid).compareTo(term);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String termAt(int entry) {
+        int offset = buffer.getInt(entryOffset(entry));
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int entryOffset(int entry) {
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,27 @@
+package com.mind.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for postings as (ordinal, frequency) pairs.
+ */
+final class IntList {
+
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
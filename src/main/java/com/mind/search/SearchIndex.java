@@ -0,0 +1,493 @@
+package com.mind.search;
+
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.Message;
+import com.mind.mail.HtmlText;
+import com.mind.mail.MailboxListener;
+import com.mind.mail.MessageJson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local full-text index over subject, sender and body text, backing search_emails.
+ *
+ * New documents go into an in-memory buffer that is flushed to an immutable memory-mapped
+ * {@link IndexSegment} once it reaches {@code outlook.search.flush-docs} documents; segments are
+ * merged when there are more than {@code outlook.search.max-segments}. Document metadata and
+ * deletions are kept in an append-only log that is compacted on startup. Documents that were
+ * buffered but never flushed are dropped on restart and re-indexed the next time they are synced
+ * or fetched. Hits are ranked with BM25, subject and sender terms weighing more than body terms.
+ * Each mailbox has its own index directory.
+ *
+ * Updates from the mailbox listener are queued and applied by a single writer thread, which also
+ * writes and merges segments. Searches only wait for the brief swaps that publish its work, never
+ * for tokenizing, flushing or merging. A full queue blocks the producer (usually sync) until the
+ * writer catches up.
+ */
+public class SearchIndex implements MailboxListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final String DOC_LOG = "docs.log";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final byte ADD = 'A';
+    private static final byte DELETE = 'D';
+    private static final int SUBJECT_WEIGHT = 3;
+    private static final int SENDER_WEIGHT = 2;
+    private static final int MAX_STORED_SUBJECT = 1000;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_QUEUED_UPDATES = 10_000;
+
+    private final Path directory;
+    private final int flushDocs;
+    private final int maxSegments;
+
+    // Held for writing only while the writer publishes a change; all state below is modified by
+    // the writer thread alone, which therefore reads it without the lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BlockingQueue<Runnable> updates = new LinkedBlockingQueue<>(MAX_QUEUED_UPDATES);
+    private final Map<String, Doc> docsById = new HashMap<>();
+    private final Map<Integer, Doc> docsByOrdinal = new HashMap<>();
+    private final List<IndexSegment> segments = new ArrayList<>();
+    private TreeMap<String, IntList> buffer = new TreeMap<>();
+    private int bufferedDocs;
+    private int nextOrdinal;
+    private int nextGeneration;
+    private long totalLength;
+    private DataOutputStream docLog;
+    private Thread writer;
+    private volatile boolean closed;
+
+    public SearchIndex(Path directory, int flushDocs, int maxSegments) {
+        this.directory = directory;
+        this.flushDocs = flushDocs;
+        this.maxSegments = maxSegments;
+    }
+
+    public record Hit(String id, String subject, String from, OffsetDateTime date, double score) {
+    }
+
+    private record Doc(int ordinal, String id, String subject, String from, long date, int length, int hash,
+                       boolean full) {
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        loadSegments();
+
+        int maxFlushedOrdinal = segments.stream().mapToInt(IndexSegment::maxOrdinal).max().orElse(-1);
+        Path logPath = directory.resolve(DOC_LOG);
+        if (Files.exists(logPath)) {
+            replayDocLog(logPath, maxFlushedOrdinal);
+        }
+        nextOrdinal = Math.max(nextOrdinal, maxFlushedOrdinal + 1);
+
+        // Rewrite the log with live documents only, then keep appending to it
+        Path tmp = directory.resolve(DOC_LOG + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (Doc doc : docsByOrdinal.values()) {
+                writeAdd(out, doc);
+            }
+        }
+        Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        docLog = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(logPath, StandardOpenOption.APPEND)));
+        log.info("Search index opened with {} documents in {} segments", docsByOrdinal.size(), segments.size());
+        writer = Thread.ofVirtual().name("search-indexer-" + directory.getFileName()).start(this::applyUpdates);
+    }
+
+    /**
+     * Applies the updates still queued, flushes the buffer and closes the log.
+     */
+    public void close() throws IOException {
+        closed = true;
+        // Wakes the writer if it is idle; a full queue means it is busy and will see the flag
+        updates.offer(() -> {
+        });
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing search index " + directory);
+        }
+        flush();
+        docLog.close();
+    }
+
+    @Override
+    public void messageUpdated(Message message, boolean full) {
+        if (message != null && message.getId() != null) {
+            enqueue(() -> {
+                try {
+                    index(message, full);
+                } catch (IOException e) {
+                    log.warn("Failed to index message {}: {}", message.getId(), e.getMessage());
+                }
+            });
+        }
+    }
+
+    @Override
+    public void messageRemoved(String id) {
+        enqueue(() -> {
+            Doc doc = docsById.get(id);
+            if (doc == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                remove(doc);
+                docLog.flush();
+            } catch (IOException e) {
+                log.warn("Failed to remove message {} from index: {}", id, e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Waits until every update queued so far has been applied.
+     */
+    void awaitUpdates() throws InterruptedException {
+        CountDownLatch applied = new CountDownLatch(1);
+        enqueue(applied::countDown);
+        applied.await();
+    }
+
+    private void enqueue(Runnable update) {
+        if (closed) {
+            return;
+        }
+        try {
+            updates.put(update);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyUpdates() {
+        while (!closed || !updates.isEmpty()) {
+            try {
+                updates.take().run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Search index update failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void index(Message message, boolean full) throws IOException {
+        String subject = message.getSubject() != null ? message.getSubject() : "";
+        String from = MessageJson.senderAddress(message);
+        String text = full ? bodyText(message) : message.getBodyPreview();
+        int hash = Objects.hash(subject, from, text);
+
+        Doc existing = docsById.get(message.getId());
+        if (existing != null && (existing.hash() == hash || existing.full() && !full)) {
+            // Unchanged, or a header update for a document already indexed with its body
+            return;
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = Tokenizer.tokenize(subject, SUBJECT_WEIGHT, frequencies)
+                + Tokenizer.tokenize(from, SENDER_WEIGHT, frequencies)
+                + Tokenizer.tokenize(text, 1, frequencies);
+
+        lock.writeLock().lock();
+        try {
+            if (existing != null) {
+                remove(existing);
+            }
+
+            Doc doc = new Doc(nextOrdinal++, message.getId(),
+                    subject.length() > MAX_STORED_SUBJECT ? subject.substring(0, MAX_STORED_SUBJECT) : subject,
+                    from,
+                    message.getReceivedDateTime() != null ? message.getReceivedDateTime().toInstant().toEpochMilli() : -1,
+                    length, hash, full);
+            writeAdd(docLog, doc);
+            docsById.put(doc.id(), doc);
+            docsByOrdinal.put(doc.ordinal(), doc);
+            totalLength += length;
+
+            for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+                IntList postings = buffer.computeIfAbsent(term.getKey(), k -> new IntList());
+                postings.add(doc.ordinal());
+                postings.add(term.getValue());
+            }
+            bufferedDocs++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (bufferedDocs >= flushDocs) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} documents matching any query term, best match first.
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> terms = Tokenizer.terms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int docCount = docsByOrdinal.size();
+            if (docCount == 0) {
+                return List.of();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / docCount);
+            Map<Integer, Double> scores = new HashMap<>();
+
+            for (String term : terms) {
+                IntList buffered = buffer.get(term);
+                int docFrequency = buffered != null ? buffered.size() / 2 : 0;
+                for (IndexSegment segment : segments) {
+                    docFrequency += segment.docFrequency(term);
+                }
+                if (docFrequency == 0) {
+                    continue;
+                }
+                // Segment postings still count deleted documents until the next merge
+                docFrequency = Math.min(docFrequency, docCount);
+                double idf = Math.log(1 + (docCount - docFrequency + 0.5) / (docFrequency + 0.5));
+
+                IndexSegment.PostingVisitor scorer = (ordinal, frequency) -> {
+                    Doc doc = docsByOrdinal.get(ordinal);
+                    if (doc == null) {
+                        return;
+                    }
+                    double norm = frequency * (K1 + 1)
+                            / (frequency + K1 * (1 - B + B * doc.length() / averageLength));
+                    scores.merge(ordinal, idf * norm, Double::sum);
+                };
+                if (buffered != null) {
+                    for (int i = 0; i < buffered.size(); i += 2) {
+                        scorer.visit(buffered.get(i), buffered.get(i + 1));
+                    }
+                }
+                for (IndexSegment segment : segments) {
+                    segment.postings(term, scorer);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+                top.add(score);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Integer, Double> entry = top.poll();
+                Doc doc = docsByOrdinal.get(entry.getKey());
+                hits.add(new Hit(doc.id(), doc.subject(), doc.from(),
+                        doc.date() >= 0 ? Instant.ofEpochMilli(doc.date()).atOffset(ZoneOffset.UTC) : null,
+                        entry.getValue()));
+            }
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void remove(Doc doc) throws IOException {
+        docsById.remove(doc.id());
+        docsByOrdinal.remove(doc.ordinal());
+        totalLength -= doc.length();
+        docLog.writeByte(DELETE);
+        docLog.writeInt(doc.ordinal());
+    }
+
+    /**
+     * Writes the buffer to a new segment. Searches keep reading the buffer while the segment is
+     * written and switch over in one step.
+     */
+    private void flush() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        int generation = nextGeneration++;
+        Path path = directory.resolve(segmentName(generation));
+        IndexSegment.write(path, generation, nextOrdinal - 1, buffer);
+        IndexSegment segment = IndexSegment.open(path, generation);
+        lock.writeLock().lock();
+        try {
+            segments.add(segment);
+            buffer = new TreeMap<>();
+            bufferedDocs = 0;
+            docLog.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (segments.size() > maxSegments) {
+            merge();
+        }
+    }
+
+    /**
+     * Merges all segments into one, dropping deleted documents, while searches keep using the
+     * old segments.
+     */
+    private void merge() throws IOException {
+        TreeMap<String, IntList> merged = new TreeMap<>();
+        int maxOrdinal = -1;
+        for (IndexSegment segment : segments) {
+            maxOrdinal = Math.max(maxOrdinal, segment.maxOrdinal());
+            segment.forEach((term, ordinal, frequency) -> {
+                if (docsByOrdinal.containsKey(ordinal)) {
+                    IntList postings = merged.computeIfAbsent(term, k -> new IntList());
+                    postings.add(ordinal);
+                    postings.add(frequency);
+                }
+            });
+        }
+
+        int generation = nextGeneration++;
+        Path path = directory.resolve(segmentName(generation));
+        IndexSegment.write(path, segments.get(0).minGeneration(), maxOrdinal, merged);
+        IndexSegment mergedSegment = IndexSegment.open(path, generation);
+        List<IndexSegment> old = new ArrayList<>(segments);
+        lock.writeLock().lock();
+        try {
+            segments.clear();
+            segments.add(mergedSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (IndexSegment segment : old) {
+            Files.deleteIfExists(segment.path());
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        List<IndexSegment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int generation = Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                found.add(IndexSegment.open(file, generation));
+                nextGeneration = Math.max(nextGeneration, generation + 1);
+            }
+        }
+
+        // Newest first: a merged segment covers every older generation down to its minGeneration
+        found.sort(Comparator.comparingInt(IndexSegment::generation).reversed());
+        int coveredFrom = Integer.MAX_VALUE;
+        for (IndexSegment segment : found) {
+            if (segment.generation() >= coveredFrom) {
+                Files.deleteIfExists(segment.path());
+                continue;
+            }
+            segments.add(0, segment);
+            coveredFrom = segment.minGeneration();
+        }
+    }
+
+    private void replayDocLog(Path logPath, int maxFlushedOrdinal) throws IOException {
+        try (InputStream in = Files.newInputStream(logPath);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                byte type;
+                try {
+                    type = data.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    if (type == ADD) {
+                        Doc doc = new Doc(data.readInt(), data.readUTF(), data.readUTF(), data.readUTF(),
+                                data.readLong(), data.readInt(), data.readInt(), data.readBoolean());
+                        nextOrdinal = Math.max(nextOrdinal, doc.ordinal() + 1);
+                        if (doc.ordinal() <= maxFlushedOrdinal) {
+                            Doc previous = docsById.put(doc.id(), doc);
+                            if (previous != null) {
+                                docsByOrdinal.remove(previous.ordinal());
+                                totalLength -= previous.length();
+                            }
+                            docsByOrdinal.put(doc.ordinal(), doc);
+                            totalLength += doc.length();
+                        }
+                    } else if (type == DELETE) {
+                        Doc doc = docsByOrdinal.remove(data.readInt());
+                        if (doc != null) {
+                            docsById.remove(doc.id());
+                            totalLength -= doc.length();
+                        }
+                    } else {
+                        log.warn("Corrupt search index log entry, ignoring the rest of {}", logPath);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // Entry cut short by a crash
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void writeAdd(DataOutputStream out, Doc doc) throws IOException {
+        out.writeByte(ADD);
+        out.writeInt(doc.ordinal());
+        out.writeUTF(doc.id());
+        out.writeUTF(doc.subject());
+        out.writeUTF(doc.from());
+        out.writeLong(doc.date());
+        out.writeInt(doc.length());
+        out.writeInt(doc.hash());
+        out.writeBoolean(doc.full());
+    }
+
+    private static String bodyText(Message message) {
+        if (message.getBody() == null || message.getBody().getContent() == null) {
+            return message.getBodyPreview();
+        }
+        return message.getBody().getContentType() == BodyType.Html
+                ? HtmlText.toPlainText(message.getBody().getContent())
+                : message.getBody().getContent();
+    }
+
+    private static String segmentName(int generation) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, generation, SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,56 @@
+package com.mind.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits text into lower-cased letter/digit runs. Used for both indexing and queries so the two
+ * always agree on terms.
+ */
+final class Tokenizer {
+
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Adds {@code weight} to the frequency of every term in {@code text}.
+     *
+     * @return the number of terms found
+     */
+    static int tokenize(String text, int weight, Map<String, Integer> frequencies) {
+        if (text == null) {
+            return 0;
+        }
+        int count = 0;
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean termChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                int termLength = i - start;
+                if (termLength >= MIN_TERM_LENGTH && termLength <= MAX_TERM_LENGTH) {
+                    frequencies.merge(text.substring(start, i).toLowerCase(), weight, Integer::sum);
+                    count++;
+                }
+                start = -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the distinct terms of a query, in query order.
+     */
+    static List<String> terms(String query) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        tokenize(query, 1, frequencies);
+        return new ArrayList<>(frequencies.keySet());
+    }
+}
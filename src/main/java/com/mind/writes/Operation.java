@@ -0,0 +1,100 @@
+package com.mind.writes;
+
+/**
+ * A mutating tool call accepted for asynchronous execution.
+ *
+ * The request fields are fixed at submission; status, outcome and attempt count change as the
+ * pipeline works on it.
+ */
+public final class Operation {
+
+    public enum Type { DRAFT_REPLY, DELETE }
+
+    public enum Status { PENDING, SUCCEEDED, FAILED }
+
+    private final String id;
+    private final String mailboxId;
+    private final Type type;
+    private final String emailId;
+    private final String body;
+    private final long submittedAt;
+
+    private volatile Status status = Status.PENDING;
+    private volatile String result;
+    private volatile String error;
+    private volatile long completedAt;
+    private int attempts;
+    // A send may have reached Graph without its outcome coming back (or being journaled)
+    private volatile boolean unconfirmed;
+
+    Operation(String id, String mailboxId, Type type, String emailId, String body, long submittedAt) {
+        this.id = id;
+        this.mailboxId = mailboxId;
+        this.type = type;
+        this.emailId = emailId;
+        this.body = body;
+        this.submittedAt = submittedAt;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String mailboxId() {
+        return mailboxId;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public String emailId() {
+        return emailId;
+    }
+
+    public String body() {
+        return body;
+    }
+
+    public long submittedAt() {
+        return submittedAt;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * The ID of the created draft, for a successful DRAFT_REPLY.
+     */
+    public String result() {
+        return result;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public long completedAt() {
+        return completedAt;
+    }
+
+    int attempt() {
+        return ++attempts;
+    }
+
+    boolean unconfirmed() {
+        return unconfirmed;
+    }
+
+    void markUnconfirmed() {
+        unconfirmed = true;
+    }
+
+    void complete(Status status, String result, String error, long completedAt) {
+        this.result = result;
+        this.error = error;
+        this.completedAt = completedAt;
+        this.status = status;
+    }
+}
@@ -0,0 +1,192 @@
+package com.mind.writes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Append-only log of asynchronous write operations.
+ *
+ * A SUBMIT record is written before an operation is acknowledged and a COMPLETE record once its
+ * outcome is known, so replaying the log yields every operation with its latest state. Records
+ * are flushed to the OS as they are written, which survives a crash of the process but not of the
+ * machine. Opening the log compacts it to the operations passed back in, and so does
+ * {@link #compact} while running. A compacted log keeps the body of pending drafts only; since
+ * those are plain text, the file is readable by its owner only where the file system allows.
+ */
+final class WriteJournal {
+
+    private static final byte SUBMIT = 'S';
+    private static final byte COMPLETE = 'C';
+
+    private final Path path;
+    private DataOutputStream out;
+    private boolean closed;
+
+    WriteJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads all operations recorded in the log, in submission order.
+     */
+    Map<String, Operation> replay() throws IOException {
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return operations;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                try {
+                    byte kind = in.readByte();
+                    if (kind == SUBMIT) {
+                        Operation operation = new Operation(readString(in), readString(in),
+                                Operation.Type.valueOf(readString(in)), readString(in), readString(in),
+                                in.readLong());
+                        operations.put(operation.id(), operation);
+                    } else if (kind == COMPLETE) {
+                        String id = readString(in);
+                        Operation.Status status = Operation.Status.valueOf(readString(in));
+                        String result = readString(in);
+                        String error = readString(in);
+                        long completedAt = in.readLong();
+                        Operation operation = operations.get(id);
+                        if (operation != null) {
+                            operation.complete(status, result, error, completedAt);
+                        }
+                    } else {
+                        throw new IOException("Corrupt write journal: " + path);
+                    }
+                } catch (EOFException e) {
+                    // Record cut short by a crash; the operation was never acknowledged
+                    break;
+                }
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Rewrites the log with {@code operations} only and opens it for appending.
+     */
+    synchronized void open(Collection<Operation> operations) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        rewrite(operations);
+    }
+
+    /**
+     * Rewrites the open log with the operations {@code live} supplies, called under the log's lock
+     * so no record is appended in between.
+     */
+    synchronized void compact(Supplier<Collection<Operation>> live) throws IOException {
+        if (out == null || closed) {
+            return;
+        }
+        out.close();
+        try {
+            rewrite(live.get());
+        } catch (IOException e) {
+            // Keep appending to the uncompacted log
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path, StandardOpenOption.APPEND)));
+            throw e;
+        }
+    }
+
+    private void rewrite(Collection<Operation> operations) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        createOwnerOnly(tmp);
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            for (Operation operation : operations) {
+                writeSubmit(compacted, operation);
+                if (operation.status() != Operation.Status.PENDING) {
+                    writeComplete(compacted, operation);
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.APPEND)));
+    }
+
+    private static void createOwnerOnly(Path file) throws IOException {
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+    }
+
+    synchronized void submitted(Operation operation) throws IOException {
+        writeSubmit(out, operation);
+        out.flush();
+    }
+
+    synchronized void completed(Operation operation) throws IOException {
+        writeComplete(out, operation);
+        out.flush();
+    }
+
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            closed = true;
+        }
+    }
+
+    private static void writeSubmit(DataOutputStream out, Operation operation) throws IOException {
+        out.writeByte(SUBMIT);
+        writeString(out, operation.id());
+        writeString(out, operation.mailboxId());
+        writeString(out, operation.type().name());
+        writeString(out, operation.emailId());
+        // A finished operation's body is never needed again
+        writeString(out, operation.status() == Operation.Status.PENDING ? operation.body() : null);
+        out.writeLong(operation.submittedAt());
+    }
+
+    private static void writeComplete(DataOutputStream out, Operation operation) throws IOException {
+        out.writeByte(COMPLETE);
+        writeString(out, operation.id());
+        writeString(out, operation.status().name());
+        writeString(out, operation.result());
+        writeString(out, operation.error());
+        out.writeLong(operation.completedAt());
+    }
+
+    // Length-prefixed UTF-8, since draft bodies can exceed the 64 KB limit of writeUTF
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,402 @@
+package com.mind.writes;
+
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.MessageCollectionResponse;
+import com.microsoft.graph.models.SingleValueLegacyExtendedProperty;
+import com.microsoft.graph.users.item.messages.item.createreply.CreateReplyPostRequestBody;
+import com.microsoft.kiota.RequestInformation;
+import com.mind.mail.Mailbox;
+import com.mind.mail.MailboxRegistry;
+import com.mind.mail.MessageBatch;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Asynchronous execution of draft and delete tool calls.
+ *
+ * An operation is journaled before its ID is handed back, then picked up by its mailbox's drain
+ * loop, which waits a short linger time for more operations, groups them by type and sends them
+ * as Graph {@code $batch} requests. Each mailbox has its own loop, so a slow or throttled mailbox
+ * does not hold up the others; a loop ends once its mailbox has been quiet for a while. Throttled
+ * or failed sends are retried with a delay; operations of a mailbox that is not open (e.g. a
+ * token user after a restart) wait until it is opened again, up to
+ * {@code outlook.writes.pending-timeout-seconds}.
+ *
+ * Deletes are delivered at least once, and a repeated delete that finds the message gone counts
+ * as succeeded. Drafts are created at most once: each draft carries its operation ID in an
+ * extended property, and a draft whose earlier send may have reached Graph (a failed batch, a
+ * server error, or a restart before the outcome was journaled) is looked up by that ID before it
+ * is created again.
+ */
+@Component
+public class WritePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(WritePipeline.class);
+
+    /**
+     * Extended property holding the ID of the operation that created a draft.
+     */
+    static final String OPERATION_PROPERTY =
+            "String {6b3d8f4e-2a51-4c8e-9f0d-7e1c5a9b2d64} Name OutlookMcpOperationId";
+
+    // A drain loop with nothing to do for this long ends; the next operation starts a new one
+    private static final long LANE_IDLE_MILLIS = 60_000;
+    // Outcomes are compacted out of the journal in groups, this long after the first of them
+    private static final long COMPACT_DELAY_MILLIS = 1000;
+
+    private final MailboxRegistry mailboxes;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    // mailbox ID -> operations waiting for that mailbox's drain loop
+    private final Map<String, BlockingQueue<Operation>> lanes = new ConcurrentHashMap<>();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    @Value("${outlook.writes.journal-file:${user.home}/.outlook-mcp/writes.log}")
+    private String journalFile;
+
+    @Value("${outlook.writes.linger-ms:100}")
+    private long lingerMillis;
+
+    @Value("${outlook.writes.retry-delay-ms:5000}")
+    private long retryDelayMillis;
+
+    @Value("${outlook.writes.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${outlook.writes.retention-seconds:3600}")
+    private long retentionSeconds;
+
+    @Value("${outlook.writes.pending-timeout-seconds:3600}")
+    private long pendingTimeoutSeconds;
+
+    private WriteJournal journal;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+
+    public WritePipeline(MailboxRegistry mailboxes) {
+        this.mailboxes = mailboxes;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        journal = new WriteJournal(Paths.get(journalFile));
+        long cutoff = System.currentTimeMillis() - retentionSeconds * 1000;
+        for (Operation operation : journal.replay().values()) {
+            if (operation.status() == Operation.Status.PENDING || operation.completedAt() >= cutoff) {
+                operations.put(operation.id(), operation);
+            }
+        }
+        journal.open(operations.values());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("write-scheduler").factory());
+        List<Operation> pending = operations.values().stream()
+                .filter(operation -> operation.status() == Operation.Status.PENDING)
+                .toList();
+        if (!pending.isEmpty()) {
+            log.info("Resuming {} pending write operations", pending.size());
+            for (Operation operation : pending) {
+                if (operation.type() == Operation.Type.DRAFT_REPLY) {
+                    // The process may have stopped after sending but before journaling the outcome
+                    operation.markUnconfirmed();
+                }
+                enqueue(operation);
+            }
+        }
+        scheduler.scheduleWithFixedDelay(this::expire, 60, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        stopped = true;
+        scheduler.shutdownNow();
+        journal.close();
+    }
+
+    /**
+     * Records a draft reply to {@code emailId} for the current request's mailbox.
+     */
+    public Operation submitDraftReply(String emailId, String body) throws IOException {
+        return submit(Operation.Type.DRAFT_REPLY, emailId, body);
+    }
+
+    /**
+     * Records a delete of {@code emailId} for the current request's mailbox.
+     */
+    public Operation submitDelete(String emailId) throws IOException {
+        return submit(Operation.Type.DELETE, emailId, null);
+    }
+
+    /**
+     * Looks up an operation of {@code mailbox}; operations of other mailboxes are not visible.
+     */
+    public Operation find(Mailbox mailbox, String operationId) {
+        Operation operation = operations.get(operationId);
+        return operation != null && operation.mailboxId().equals(mailbox.id()) ? operation : null;
+    }
+
+    /**
+     * Request body that creates a reply draft with its body in a single round-trip.
+     */
+    public static CreateReplyPostRequestBody replyWithBody(String body) {
+        return replyWithBody(body, null);
+    }
+
+    /**
+     * Like {@link #replyWithBody(String)}, tagging the draft with {@code operationId} so it can be
+     * found again when the outcome of the call is lost.
+     */
+    static CreateReplyPostRequestBody replyWithBody(String body, String operationId) {
+        ItemBody itemBody = new ItemBody();
+        itemBody.setContentType(BodyType.Text);
+        itemBody.setContent(body);
+        Message message = new Message();
+        message.setBody(itemBody);
+        if (operationId != null) {
+            SingleValueLegacyExtendedProperty property = new SingleValueLegacyExtendedProperty();
+            property.setId(OPERATION_PROPERTY);
+            property.setValue(operationId);
+            message.setSingleValueExtendedProperties(List.of(property));
+        }
+        CreateReplyPostRequestBody request = new CreateReplyPostRequestBody();
+        request.setMessage(message);
+        return request;
+    }
+
+    private Operation submit(Operation.Type type, String emailId, String body) throws IOException {
+        Operation operation = new Operation(UUID.randomUUID().toString(), mailboxes.current().id(), type,
+                emailId, body, System.currentTimeMillis());
+        // In the map before the journal, so a concurrent compaction keeps it
+        operations.put(operation.id(), operation);
+        try {
+            journal.submitted(operation);
+        } catch (IOException e) {
+            operations.remove(operation.id());
+            throw e;
+        }
+        enqueue(operation);
+        return operation;
+    }
+
+    private void enqueue(Operation operation) {
+        // Under the map's key lock, which a drain loop also ends under, so nothing is stranded
+        lanes.compute(operation.mailboxId(), (mailboxId, lane) -> {
+            if (lane == null) {
+                lane = new LinkedBlockingQueue<>();
+                BlockingQueue<Operation> started = lane;
+                Thread.ofVirtual().name("write-pipeline-" + mailboxId).start(() -> drain(mailboxId, started));
+            }
+            lane.add(operation);
+            return lane;
+        });
+    }
+
+    private void drain(String mailboxId, BlockingQueue<Operation> lane) {
+        while (!stopped) {
+            try {
+                Operation first = lane.poll(LANE_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    boolean[] ended = new boolean[1];
+                    lanes.computeIfPresent(mailboxId, (key, current) -> {
+                        ended[0] = current == lane && lane.isEmpty();
+                        return ended[0] ? null : current;
+                    });
+                    if (ended[0]) {
+                        return;
+                    }
+                    continue;
+                }
+                List<Operation> batch = new ArrayList<>();
+                batch.add(first);
+                // Give concurrent callers a moment so their operations share a $batch request
+                Thread.sleep(lingerMillis);
+                lane.drainTo(batch);
+                // Operations that timed out while waiting for a retry are already failed
+                process(mailboxId, batch.stream()
+                        .filter(operation -> operation.status() == Operation.Status.PENDING)
+                        .toList());
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Write pipeline round failed for mailbox {}: {}", mailboxId, e.getMessage());
+            }
+        }
+    }
+
+    private void process(String mailboxId, List<Operation> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (MailboxRegistry.Lease lease = mailboxes.acquireOpen(mailboxId)) {
+            if (lease == null) {
+                // No credential for this mailbox until its user connects again
+                List<Operation> waiting = new ArrayList<>();
+                for (Operation operation : pending) {
+                    if (overdue(operation, System.currentTimeMillis())) {
+                        complete(operation, Operation.Status.FAILED, null, "Mailbox was not opened in time");
+                    } else {
+                        waiting.add(operation);
+                    }
+                }
+                retryLater(waiting);
+                return;
+            }
+            Mailbox mailbox = lease.mailbox();
+            Map<Operation.Type, List<Operation>> byType = pending.stream()
+                    .collect(Collectors.groupingBy(Operation::type));
+            byType.forEach((type, operationsOfType) -> {
+                try {
+                    send(mailbox, type, operationsOfType);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to send {} write operations for mailbox {}: {}",
+                            operationsOfType.size(), mailboxId, e.getMessage());
+                    if (type == Operation.Type.DRAFT_REPLY) {
+                        operationsOfType.forEach(Operation::markUnconfirmed);
+                    }
+                    retryLater(operationsOfType);
+                }
+            });
+        }
+    }
+
+    private void send(Mailbox mailbox, Operation.Type type, List<Operation> pending) {
+        Map<String, Operation> byId = new LinkedHashMap<>();
+        Map<String, RequestInformation> requests = new LinkedHashMap<>();
+        for (Operation operation : pending) {
+            if (operation.unconfirmed()) {
+                // Only drafts are marked; a draft that already exists must not be created twice
+                String draftId = findDraft(mailbox, operation.id());
+                if (draftId != null) {
+                    succeeded(mailbox, operation, draftId);
+                    continue;
+                }
+            }
+            byId.put(operation.id(), operation);
+            requests.put(operation.id(), type == Operation.Type.DRAFT_REPLY
+                    ? mailbox.graphClient().me().messages().byMessageId(operation.emailId())
+                            .createReply().toPostRequestInformation(replyWithBody(operation.body(), operation.id()))
+                    : mailbox.graphClient().me().messages().byMessageId(operation.emailId())
+                            .toDeleteRequestInformation());
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        List<Operation> retry = new ArrayList<>();
+        for (MessageBatch.Result result : mailbox.batch().send(requests, type == Operation.Type.DRAFT_REPLY,
+                type == Operation.Type.DELETE)) {
+            Operation operation = byId.get(result.id());
+            if (result.success() || (type == Operation.Type.DELETE && result.status() == 404)) {
+                succeeded(mailbox, operation, result.message() != null ? result.message().getId() : null);
+            } else if (retryable(result.status()) && operation.attempt() < maxAttempts) {
+                if (type == Operation.Type.DRAFT_REPLY && result.status() != 429) {
+                    // A failed batch or a server error may still have created the draft
+                    operation.markUnconfirmed();
+                }
+                retry.add(operation);
+            } else {
+                complete(operation, Operation.Status.FAILED, null, result.error());
+            }
+        }
+        retryLater(retry);
+    }
+
+    // ID of the draft created by operation operationId, or null if there is none
+    private static String findDraft(Mailbox mailbox, String operationId) {
+        MessageCollectionResponse found = mailbox.graphClient().me().messages().get(requestConfig -> {
+            requestConfig.queryParameters.filter = "singleValueExtendedProperties/Any(ep: ep/id eq '"
+                    + OPERATION_PROPERTY + "' and ep/value eq '" + operationId + "')";
+            requestConfig.queryParameters.select = new String[] { "id" };
+            requestConfig.queryParameters.top = 1;
+        });
+        return found != null && found.getValue() != null && !found.getValue().isEmpty()
+                ? found.getValue().get(0).getId()
+                : null;
+    }
+
+    private void succeeded(Mailbox mailbox, Operation operation, String result) {
+        if (operation.type() == Operation.Type.DELETE) {
+            mailbox.cache().invalidate(operation.emailId());
+        } else {
+            mailbox.cache().invalidateMessage(operation.emailId());
+            mailbox.sync().markStale();
+        }
+        complete(operation, Operation.Status.SUCCEEDED, result, null);
+    }
+
+    private void complete(Operation operation, Operation.Status status, String result, String error) {
+        operation.complete(status, result, error, System.currentTimeMillis());
+        try {
+            journal.completed(operation);
+        } catch (IOException e) {
+            // The outcome is still visible in memory; after a restart the operation is sent again
+            log.warn("Failed to journal outcome of operation {}: {}", operation.id(), e.getMessage());
+        }
+        scheduleCompaction();
+    }
+
+    private void retryLater(List<Operation> pending) {
+        if (!pending.isEmpty()) {
+            scheduler.schedule(() -> pending.forEach(this::enqueue), retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Rewrites the journal soon after outcomes are known, dropping the bodies of finished drafts
+    private void scheduleCompaction() {
+        if (compactionScheduled.compareAndSet(false, true) && !stopped) {
+            scheduler.schedule(this::compact, COMPACT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void compact() {
+        compactionScheduled.set(false);
+        try {
+            journal.compact(operations::values);
+        } catch (IOException e) {
+            log.warn("Failed to compact write journal: {}", e.getMessage());
+        }
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (Operation operation : operations.values()) {
+            if (operation.status() == Operation.Status.PENDING && overdue(operation, now)) {
+                complete(operation, Operation.Status.FAILED, null, "Not sent within the pending timeout");
+            }
+        }
+        long cutoff = now - retentionSeconds * 1000;
+        if (operations.values().removeIf(operation ->
+                operation.status() != Operation.Status.PENDING && operation.completedAt() < cutoff)) {
+            scheduleCompaction();
+        }
+    }
+
+    private boolean overdue(Operation operation, long now) {
+        return operation.submittedAt() < now - pendingTimeoutSeconds * 1000;
+    }
+
+    // Status 0 means the batch request itself failed
+    private static boolean retryable(int status) {
+        return status == 0 || status == 429 || status >= 500;
+    }
+}
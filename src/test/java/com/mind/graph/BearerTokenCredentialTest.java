@@ -0,0 +1,58 @@
+package com.mind.graph;
+
+import com.azure.core.credential.TokenRequestContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BearerTokenCredentialTest {
+
+    @Test
+    void readsExpiryFromTheJwtClaim() {
+        Instant exp = Instant.parse("2030-01-01T00:00:00Z");
+
+        assertThat(BearerTokenCredential.expiresAt(jwt(exp)).toInstant()).isEqualTo(exp);
+    }
+
+    @Test
+    void opaqueTokensGetTheNominalLifetime() {
+        OffsetDateTime expiresAt = BearerTokenCredential.expiresAt("not-a-jwt");
+
+        assertThat(Duration.between(OffsetDateTime.now(), expiresAt))
+                .isBetween(BearerTokenCredential.OPAQUE_TOKEN_LIFETIME.minusMinutes(1),
+                        BearerTokenCredential.OPAQUE_TOKEN_LIFETIME);
+        assertThat(BearerTokenCredential.expiresAt("a.b.c")).isAfter(OffsetDateTime.now());
+    }
+
+    @Test
+    void keepsTheTokenThatExpiresLast() {
+        String early = jwt(Instant.now().plusSeconds(600));
+        String late = jwt(Instant.now().plusSeconds(3600));
+        BearerTokenCredential credential = new BearerTokenCredential(early);
+
+        credential.update(late);
+        assertThat(current(credential)).isEqualTo(late);
+
+        // A session still sending the older token does not downgrade the others
+        credential.update(early);
+        assertThat(current(credential)).isEqualTo(late);
+    }
+
+    private static String current(BearerTokenCredential credential) {
+        return credential.getToken(new TokenRequestContext()).block().getToken();
+    }
+
+    private static String jwt(Instant exp) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"exp\":" + exp.getEpochSecond() + ",\"oid\":\"u\"}")
+                .getBytes(StandardCharsets.UTF_8))
+                + ".sig";
+    }
+}
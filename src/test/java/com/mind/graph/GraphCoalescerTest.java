@@ -0,0 +1,108 @@
+package com.mind.graph;
+
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphCoalescerTest {
+
+    private static final String MESSAGE_ROUTE = "/me/messages/a";
+
+    private GraphStub graph;
+    private GraphClientStats stats;
+    private GraphServiceClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+        stats = new GraphClientStats();
+        client = graph.clients(16, stats).create(GraphStub.FAKE_TOKENS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void identicalReadsInFlightShareOneResponse() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        graph.on("GET", MESSAGE_ROUTE, request -> {
+            await(release);
+            return Reply.json("{\"id\":\"a\",\"subject\":\"Shared\"}");
+        });
+
+        List<Message> messages = readConcurrently(8, release);
+
+        assertThat(messages).extracting(Message::getSubject).containsOnly("Shared");
+        assertThat(graph.requests("GET", MESSAGE_ROUTE)).hasSize(1);
+        assertThat(stats.getCoalesced()).isEqualTo(7);
+    }
+
+    @Test
+    void largeResponsesAreNotBufferedForFollowers() throws Exception {
+        String subject = "x".repeat((int) GraphCoalescer.MAX_SHARED_BYTES);
+        CountDownLatch release = new CountDownLatch(1);
+        graph.on("GET", MESSAGE_ROUTE, request -> {
+            await(release);
+            return Reply.json("{\"id\":\"a\",\"subject\":\"" + subject + "\"}");
+        });
+
+        List<Message> messages = readConcurrently(4, release);
+
+        assertThat(messages).extracting(Message::getSubject).containsOnly(subject);
+        // Followers fetched their own copy once the leader's response turned out too large
+        assertThat(graph.requests("GET", MESSAGE_ROUTE)).hasSize(4);
+        assertThat(stats.getCoalesced()).isZero();
+    }
+
+    @Test
+    void sequentialReadsAreNotCoalesced() {
+        graph.on("GET", MESSAGE_ROUTE, request -> Reply.json("{\"id\":\"a\",\"subject\":\"One\"}"));
+
+        client.me().messages().byMessageId("a").get();
+        client.me().messages().byMessageId("a").get();
+
+        assertThat(graph.requests("GET", MESSAGE_ROUTE)).hasSize(2);
+        assertThat(stats.getCoalesced()).isZero();
+    }
+
+    private List<Message> readConcurrently(int readers, CountDownLatch release) throws Exception {
+        List<Future<Message>> reads = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < readers; i++) {
+                reads.add(executor.submit(() -> client.me().messages().byMessageId("a").get()));
+            }
+            // Let every reader reach the coalescer before the leader's response arrives
+            Thread.sleep(300);
+            release.countDown();
+            List<Message> messages = new ArrayList<>();
+            for (Future<Message> read : reads) {
+                messages.add(read.get(10, TimeUnit.SECONDS));
+            }
+            return messages;
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
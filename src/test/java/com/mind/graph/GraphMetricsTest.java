@@ -0,0 +1,82 @@
+package com.mind.graph;
+
+import com.mind.graph.GraphStub.Reply;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphMetricsTest {
+
+    @Test
+    void identifiersAreReplacedInEndpoints() {
+        assertThat(endpoint("/v1.0/me/messages/AAMkAD=")).isEqualTo("/me/messages/{id}");
+        assertThat(endpoint("/v1.0/me/messages/AAMkAD=/createReply")).isEqualTo("/me/messages/{id}/createReply");
+        assertThat(endpoint("/v1.0/me/messages/AAMkAD=/attachments/AAMkAT=/$value"))
+                .isEqualTo("/me/messages/{id}/attachments/{id}/$value");
+        assertThat(endpoint("/v1.0/users/someone@example.com/mailFolders/inbox/messages"))
+                .isEqualTo("/users/{id}/mailFolders/{id}/messages");
+        assertThat(endpoint("/beta/subscriptions/1234")).isEqualTo("/subscriptions/{id}");
+    }
+
+    @Test
+    void functionsAndODataSegmentsAreKept() {
+        assertThat(endpoint("/v1.0/me/mailFolders/inbox/messages/delta()"))
+                .isEqualTo("/me/mailFolders/{id}/messages/delta()");
+        assertThat(endpoint("/v1.0/me/messages/delta")).isEqualTo("/me/messages/delta");
+        assertThat(endpoint("/v1.0/me/messages/$count")).isEqualTo("/me/messages/$count");
+        assertThat(endpoint("/v1.0/$batch")).isEqualTo("/$batch");
+        assertThat(endpoint("/v1.0/")).isEqualTo("/");
+    }
+
+    @Test
+    void recordsSizeOfCompressedResponses() throws IOException {
+        String json = "{\"value\":[" + "{\"id\":\"x\"},".repeat(200) + "{\"id\":\"y\"}]}";
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (GraphStub graph = GraphStub.start()) {
+            graph.on("GET", "/me/messages", request -> new Reply(200,
+                    Map.of("Content-Type", "application/json", "Content-Encoding", "gzip"), gzip(json)));
+            OkHttpClient http = new OkHttpClient.Builder().addInterceptor(new GraphMetrics(registry)).build();
+
+            try (Response response = http.newCall(new Request.Builder()
+                    .url(graph.baseUrl() + "/me/messages").build()).execute()) {
+                // Transparent gunzip leaves no content length to read
+                assertThat(response.body().contentLength()).isEqualTo(-1);
+                assertThat(response.body().string()).isEqualTo(json);
+            }
+        }
+
+        DistributionSummary size = registry.get("graph.response.size").tag("endpoint", "/me/messages").summary();
+        assertThat(size.count()).isEqualTo(1);
+        assertThat(size.totalAmount()).isEqualTo(json.length());
+        assertThat(registry.get("graph.requests").tag("status", "200").timer().count()).isEqualTo(1);
+    }
+
+    private static String endpoint(String path) {
+        return GraphMetrics.endpoint(HttpUrl.get("https://graph.microsoft.com" + path).pathSegments());
+    }
+
+    private static byte[] gzip(String text) {
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            try (OutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
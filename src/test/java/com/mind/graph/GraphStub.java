@@ -0,0 +1,181 @@
+package com.mind.graph;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.ConnectionPool;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for Microsoft Graph, for tests that exercise the real client stack.
+ *
+ * Routes match the request method and the path below {@code /v1.0} as a regular expression; the
+ * most recently added matching route answers, so a test can override a route part way through.
+ * Every request is recorded. Clients from {@link #client()} hold a fixed fake token; it only
+ * reaches the stub inside {@code $batch} steps, which are signed against the Graph host.
+ */
+public final class GraphStub implements AutoCloseable {
+
+    public static final String PREFIX = "/v1.0";
+
+    public record Request(String method, String path, String query, Map<String, List<String>> headers,
+                          String body) {
+
+        public String header(String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+
+    public record Reply(int status, Map<String, String> headers, byte[] body) {
+
+        public static Reply json(String body) {
+            return json(200, body);
+        }
+
+        public static Reply json(int status, String body) {
+            return new Reply(status, Map.of("Content-Type", "application/json"),
+                    body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Reply status(int status) {
+            return new Reply(status, Map.of(), new byte[0]);
+        }
+
+        public Reply withHeader(String name, String value) {
+            Map<String, String> merged = new HashMap<>(headers);
+            merged.put(name, value);
+            return new Reply(status, merged, body);
+        }
+    }
+
+    private record Route(String method, Pattern path, Function<Request, Reply> handler) {
+    }
+
+    private final HttpServer server;
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    private GraphStub(HttpServer server) {
+        this.server = server;
+    }
+
+    public static GraphStub start() throws IOException {
+        return start(0);
+    }
+
+    public static GraphStub start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        GraphStub stub = new GraphStub(server);
+        server.createContext("/", stub::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return stub;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + port() + PREFIX;
+    }
+
+    public GraphStub on(String method, String pathRegex, Function<Request, Reply> handler) {
+        routes.add(0, new Route(method, Pattern.compile(pathRegex), handler));
+        return this;
+    }
+
+    public List<Request> requests() {
+        return List.copyOf(requests);
+    }
+
+    public List<Request> requests(String method, String pathRegex) {
+        Pattern pattern = Pattern.compile(pathRegex);
+        List<Request> matching = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.method().equals(method) && pattern.matcher(request.path()).matches()) {
+                matching.add(request);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * A client wired like production (coalescing, throttle, bulkhead, metrics) against this stub.
+     */
+    public GraphServiceClient client() {
+        return clients(4).create(FAKE_TOKENS);
+    }
+
+    public GraphClients clients(int maxConcurrentRequests) {
+        return clients(maxConcurrentRequests, new GraphClientStats());
+    }
+
+    public GraphClients clients(int maxConcurrentRequests, GraphClientStats stats) {
+        return new GraphClients(new ConnectionPool(4, 30, TimeUnit.SECONDS), stats,
+                new GraphMetrics(new SimpleMeterRegistry()), new String[] { "graph.microsoft.com" },
+                "https://graph.microsoft.com/.default", baseUrl(),
+                maxConcurrentRequests, 5000, 1000, 1, 1000);
+    }
+
+    public static final TokenCredential FAKE_TOKENS =
+            request -> Mono.just(new AccessToken("stub-token", OffsetDateTime.now().plusHours(1)));
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith(PREFIX)) {
+                path = path.substring(PREFIX.length());
+            }
+            Request request = new Request(exchange.getRequestMethod(), path, exchange.getRequestURI().getRawQuery(),
+                    Map.copyOf(exchange.getRequestHeaders()),
+                    new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            requests.add(request);
+
+            Reply reply = Reply.json(404, "{\"error\":{\"code\":\"ResourceNotFound\",\"message\":\"No stub route\"}}");
+            for (Route route : routes) {
+                if (route.method().equals(request.method()) && route.path().matcher(path).matches()) {
+                    reply = route.handler().apply(request);
+                    break;
+                }
+            }
+
+            reply.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            exchange.sendResponseHeaders(reply.status(), reply.body().length == 0 ? -1 : reply.body().length);
+            if (reply.body().length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(reply.body());
+                }
+            }
+        }
+    }
+}
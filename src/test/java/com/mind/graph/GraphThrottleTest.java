@@ -0,0 +1,78 @@
+package com.mind.graph;
+
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.mind.graph.GraphStub.Reply;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphThrottleTest {
+
+    private static final String MESSAGE_ROUTE = "/me/messages/a";
+    private static final String THROTTLED = "{\"error\":{\"code\":\"TooManyRequests\",\"message\":\"Slow down\"}}";
+
+    private GraphStub graph;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void retryAfterPausesLaterRequestsAndHalvesTheRate() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        graph.on("GET", MESSAGE_ROUTE, request -> calls.getAndIncrement() == 0
+                ? Reply.json(429, THROTTLED).withHeader("Retry-After", "1")
+                : Reply.json("{\"id\":\"a\"}"));
+        GraphClientStats stats = new GraphClientStats();
+        GraphThrottle throttle = new GraphThrottle(stats, 10, 1, 10);
+        OkHttpClient http = new OkHttpClient.Builder().addInterceptor(throttle).build();
+        Request request = new Request.Builder().url(graph.baseUrl() + MESSAGE_ROUTE).build();
+
+        try (Response response = http.newCall(request).execute()) {
+            assertThat(response.code()).isEqualTo(429);
+        }
+        long start = System.nanoTime();
+        try (Response response = http.newCall(request).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(900_000_000L);
+        assertThat(stats.getThrottled()).isEqualTo(1);
+        // Halved by the 429, then nudged back up by the success
+        assertThat(throttle.getRate()).isEqualTo(10 / 2.0 + 10 / 50.0);
+    }
+
+    @Test
+    void clientRetriesAThrottledReadAfterRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        graph.on("GET", MESSAGE_ROUTE, request -> calls.getAndIncrement() == 0
+                ? Reply.json(429, THROTTLED).withHeader("Retry-After", "1")
+                : Reply.json("{\"id\":\"a\",\"subject\":\"After the pause\"}"));
+        GraphClientStats stats = new GraphClientStats();
+        GraphServiceClient client = graph.clients(4, stats).create(GraphStub.FAKE_TOKENS);
+
+        long start = System.nanoTime();
+        Message message = client.me().messages().byMessageId("a").get();
+
+        assertThat(message.getSubject()).isEqualTo("After the pause");
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(900_000_000L);
+        assertThat(graph.requests("GET", MESSAGE_ROUTE)).hasSize(2);
+        assertThat(stats.getThrottled()).isEqualTo(1);
+        assertThat(stats.getRetried()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,95 @@
+package com.mind.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void writesNestedStructuresWithSeparators() throws Exception {
+        String json = new JsonWriter()
+                .beginObject()
+                .field("s", "x")
+                .field("n", 42L)
+                .field("b", true)
+                .field("d", 1.5)
+                .name("list").beginArray().value("a").nullValue().value(7L).beginObject().endObject().endArray()
+                .name("empty").beginArray().endArray()
+                .endObject()
+                .toString();
+
+        assertThat(json).isEqualTo("{\"s\":\"x\",\"n\":42,\"b\":true,\"d\":1.5,"
+                + "\"list\":[\"a\",null,7,{}],\"empty\":[]}");
+        assertThat(MAPPER.readTree(json).get("list").size()).isEqualTo(4);
+    }
+
+    @Test
+    void escapesEveryControlCharacter() throws Exception {
+        StringBuilder all = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            all.append(c);
+        }
+        all.append("\"\\/");
+
+        String quoted = JsonWriter.quote(all.toString());
+
+        for (int i = 0; i < quoted.length(); i++) {
+            assertThat(quoted.charAt(i)).isGreaterThanOrEqualTo(' ');
+        }
+        assertThat(quoted).contains("\\n", "\\r", "\\t", "\\b", "\\f", "\\u0000", "\\u001f", "\\\"", "\\\\");
+        assertThat(MAPPER.readTree(quoted).asText()).isEqualTo(all.toString());
+    }
+
+    @Test
+    void keepsSurrogatePairsAndEscapesUnpairedSurrogates() throws Exception {
+        String emoji = "mail 📧 sent";
+        assertThat(JsonWriter.quote(emoji)).isEqualTo("\"" + emoji + "\"");
+
+        String broken = "a\uD83Db\uDCE7c\uD83D";
+        String quoted = JsonWriter.quote(broken);
+
+        assertThat(quoted).isEqualTo("\"a\\ud83db\\udce7c\\ud83d\"");
+        // Survives a UTF-8 round-trip, which raw lone surrogates would not
+        byte[] utf8 = quoted.getBytes(StandardCharsets.UTF_8);
+        assertThat(new String(utf8, StandardCharsets.UTF_8)).isEqualTo(quoted);
+        assertThat(MAPPER.readTree(utf8).asText()).isEqualTo(broken);
+    }
+
+    @Test
+    void escapesJavaScriptLineSeparators() {
+        assertThat(JsonWriter.quote("a\u2028b\u2029c")).isEqualTo("\"a\\u2028b\\u2029c\"");
+    }
+
+    @Test
+    void markupRoundTripsUnchanged() throws Exception {
+        String html = "<script>var s = \"</script>\";</script><!-- x --><a href='y'>&amp;</a>";
+
+        JsonNode node = MAPPER.readTree(new JsonWriter().beginObject().field("body", html).endObject().toString());
+
+        assertThat(node.get("body").asText()).isEqualTo(html);
+    }
+
+    @Test
+    void nullStringsAndObjects() {
+        assertThat(new JsonWriter().beginArray().value((String) null).value((Object) null).endArray().toString())
+                .isEqualTo("[\"\",\"\"]");
+        assertThat(new JsonWriter().value(Double.NaN).toString()).isEqualTo("null");
+    }
+
+    @Test
+    void rejectsRunawayNesting() {
+        JsonWriter writer = new JsonWriter();
+        for (int i = 0; i < 32; i++) {
+            writer.beginArray();
+        }
+        assertThatThrownBy(writer::beginArray).isInstanceOf(IllegalStateException.class);
+    }
+}
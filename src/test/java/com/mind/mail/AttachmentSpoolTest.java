@@ -0,0 +1,117 @@
+package com.mind.mail;
+
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttachmentSpoolTest {
+
+    private static final String ATTACHMENT_ROUTE = "/me/messages/m1/attachments/a1";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void completeUtf8LengthDropsOnlyACutOffTrailingSequence() {
+        byte[] text = "aé€😀".getBytes(StandardCharsets.UTF_8);
+
+        // Whole sequences are kept
+        assertThat(AttachmentSpool.completeUtf8Length(text)).isEqualTo(text.length);
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 3))).isEqualTo(3);
+        // 4-byte emoji cut after 1, 2 and 3 of its bytes
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 7))).isEqualTo(6);
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 8))).isEqualTo(6);
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 9))).isEqualTo(6);
+        // 3-byte euro sign cut after its first byte
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 4))).isEqualTo(3);
+        // 2-byte e-acute cut after its first byte
+        assertThat(AttachmentSpool.completeUtf8Length(prefix(text, 2))).isEqualTo(1);
+    }
+
+    @Test
+    void completeUtf8LengthNeverReturnsAnEmptyRangeForAPartialSequence() {
+        // A window shorter than one character still makes progress
+        assertThat(AttachmentSpool.completeUtf8Length(prefix("€".getBytes(StandardCharsets.UTF_8), 2))).isEqualTo(2);
+        assertThat(AttachmentSpool.completeUtf8Length(new byte[0])).isZero();
+        assertThat(AttachmentSpool.completeUtf8Length(new byte[] { (byte) 0x80, (byte) 0x80 })).isEqualTo(2);
+    }
+
+    @Test
+    void openRemovesOnlyLeftoverSpoolFiles() throws IOException {
+        String key = "ab".repeat(32);
+        Path leftover = Files.writeString(directory.resolve(key + ".att"), "old");
+        Path partial = Files.writeString(directory.resolve(key + ".att.tmp"), "old");
+        Path userFile = Files.writeString(directory.resolve("notes.att"), "mine");
+        Path other = Files.writeString(directory.resolve("report.pdf"), "mine");
+        Path subdirectory = Files.createDirectories(directory.resolve("nested"));
+        Files.writeString(subdirectory.resolve("file.txt"), "mine");
+
+        new AttachmentSpool(directory.toString(), 1, 60).open();
+
+        assertThat(leftover).doesNotExist();
+        assertThat(partial).doesNotExist();
+        assertThat(userFile).exists();
+        assertThat(other).exists();
+        assertThat(subdirectory.resolve("file.txt")).exists();
+    }
+
+    @Test
+    void spoolsOnceAndServesRanges() throws Exception {
+        try (GraphStub graph = GraphStub.start()) {
+            routeAttachment(graph, "hello attachment");
+            AttachmentSpool spool = new AttachmentSpool(directory.toString(), 1, 60);
+            spool.open();
+            Mailbox mailbox = mailbox(graph);
+
+            AttachmentSpool.Spooled first = spool.spool(mailbox, "m1", "a1");
+            AttachmentSpool.Spooled second = spool.spool(mailbox, "m1", "a1");
+
+            assertThat(second).isSameAs(first);
+            assertThat(first.size()).isEqualTo(16);
+            assertThat(new String(spool.read(first, 6, 100), StandardCharsets.UTF_8)).isEqualTo("attachment");
+            assertThat(graph.requests("GET", ATTACHMENT_ROUTE + "/\\$value")).hasSize(1);
+        }
+    }
+
+    @Test
+    void expiredFilesAreDownloadedAgain() throws Exception {
+        try (GraphStub graph = GraphStub.start()) {
+            routeAttachment(graph, "fresh");
+            AttachmentSpool spool = new AttachmentSpool(directory.toString(), 1, 0);
+            spool.open();
+            Mailbox mailbox = mailbox(graph);
+
+            spool.spool(mailbox, "m1", "a1");
+            Thread.sleep(5);
+            spool.spool(mailbox, "m1", "a1");
+
+            assertThat(graph.requests("GET", ATTACHMENT_ROUTE + "/\\$value")).hasSize(2);
+        }
+    }
+
+    private static void routeAttachment(GraphStub graph, String content) {
+        graph.on("GET", ATTACHMENT_ROUTE, request -> Reply.json("{\"@odata.type\":\"#microsoft.graph.fileAttachment\","
+                + "\"id\":\"a1\",\"name\":\"a.txt\",\"contentType\":\"text/plain\",\"size\":" + content.length() + "}"));
+        graph.on("GET", ATTACHMENT_ROUTE + "/\\$value", request -> new Reply(200,
+                Map.of("Content-Type", "application/octet-stream"), content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Mailbox mailbox(GraphStub graph) {
+        return new Mailbox("test", graph.client(), null, null, null, null, null, null);
+    }
+
+    private static byte[] prefix(byte[] bytes, int length) {
+        byte[] prefix = new byte[length];
+        System.arraycopy(bytes, 0, prefix, 0, length);
+        return prefix;
+    }
+}
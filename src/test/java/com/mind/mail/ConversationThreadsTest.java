@@ -0,0 +1,142 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationThreadsTest {
+
+    private static final String MESSAGES_ROUTE = "/me/messages";
+    private static final OffsetDateTime START = OffsetDateTime.of(2024, 3, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+
+    private GraphStub graph;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void readsRemainingPagesByOffsetInReceivedOrder() {
+        serveConversation(23, true);
+        ConversationThreads threads = new ConversationThreads(graph.client(), 10, 250, 10, 1000, 300);
+
+        ConversationThreads.Conversation conversation = threads.get("m0", "conv-1");
+
+        assertThat(conversation.messages()).extracting(Message::getId)
+                .containsExactlyElementsOf(ids(23));
+        assertThat(conversation.totalCount()).isEqualTo(23);
+        assertThat(conversation.complete()).isTrue();
+        List<GraphStub.Request> pages = graph.requests("GET", MESSAGES_ROUTE);
+        assertThat(pages).hasSize(3);
+        assertThat(pages).allSatisfy(page -> {
+            Map<String, String> query = query(page);
+            assertThat(query.get("$orderby")).isEqualTo("receivedDateTime");
+            // Graph only orders by a property that leads the filter
+            assertThat(query.get("$filter")).startsWith("receivedDateTime ge ")
+                    .endsWith("conversationId eq 'conv-1'");
+        });
+        assertThat(pages).extracting(page -> query(page).getOrDefault("$skip", "0"))
+                .containsExactlyInAnyOrder("0", "10", "20");
+    }
+
+    @Test
+    void readsNoMoreThanTheMessageBound() {
+        serveConversation(40, true);
+        ConversationThreads threads = new ConversationThreads(graph.client(), 10, 15, 10, 1000, 300);
+
+        ConversationThreads.Conversation conversation = threads.get("m0", "conv-1");
+
+        assertThat(conversation.messages()).extracting(Message::getId).containsExactlyElementsOf(ids(15));
+        assertThat(conversation.totalCount()).isEqualTo(40);
+        assertThat(conversation.complete()).isFalse();
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).hasSize(2);
+    }
+
+    @Test
+    void followsNextLinksWhenNoCountIsReported() {
+        serveConversation(12, false);
+        ConversationThreads threads = new ConversationThreads(graph.client(), 5, 250, 10, 1000, 300);
+
+        ConversationThreads.Conversation conversation = threads.get("m0", "conv-1");
+
+        assertThat(conversation.messages()).extracting(Message::getId).containsExactlyElementsOf(ids(12));
+        assertThat(conversation.complete()).isTrue();
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).hasSize(3);
+    }
+
+    @Test
+    void cachedConversationIsDroppedWhenANewReplyShowsUp() {
+        serveConversation(3, true);
+        ConversationThreads threads = new ConversationThreads(graph.client(), 10, 250, 10, 1000, 300);
+        threads.get("m0", "conv-1");
+        threads.get("m1", "conv-1");
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).hasSize(1);
+
+        Message reply = new Message();
+        reply.setId("m3");
+        reply.setConversationId("conv-1");
+        threads.messageUpdated(reply, false);
+        threads.get("m3", "conv-1");
+
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).hasSize(2);
+    }
+
+    // Answers conversation reads from a conversation of `size` messages, one minute apart
+    private void serveConversation(int size, boolean count) {
+        graph.on("GET", MESSAGES_ROUTE, request -> {
+            Map<String, String> query = query(request);
+            int skip = Integer.parseInt(query.getOrDefault("$skip", "0"));
+            int top = Integer.parseInt(query.get("$top"));
+            List<String> page = new ArrayList<>();
+            for (int i = skip; i < Math.min(size, skip + top); i++) {
+                page.add("{\"id\":\"m" + i + "\",\"conversationId\":\"conv-1\",\"subject\":\"Re: plans\","
+                        + "\"receivedDateTime\":\"" + START.plusMinutes(i) + "\"}");
+            }
+            StringBuilder body = new StringBuilder("{\"value\":[").append(String.join(",", page)).append("]");
+            if (count && "true".equals(query.get("$count"))) {
+                body.append(",\"@odata.count\":").append(size);
+            }
+            if (!count && skip + top < size) {
+                body.append(",\"@odata.nextLink\":\"").append(graph.baseUrl()).append(MESSAGES_ROUTE)
+                        .append("?%24top=").append(top).append("&%24skip=").append(skip + top).append("\"");
+            }
+            return Reply.json(body.append("}").toString());
+        });
+    }
+
+    private static Map<String, String> query(GraphStub.Request request) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : request.query().split("&")) {
+            int eq = pair.indexOf('=');
+            parameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static List<String> ids(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "m" + i).toList();
+    }
+}
@@ -0,0 +1,54 @@
+package com.mind.mail;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HtmlTextTest {
+
+    @Test
+    void dropsTagsAndCollapsesWhitespace() {
+        assertThat(HtmlText.toPlainText("<span>Hello</span>   <b>world</b>\n\t!")).isEqualTo("Hello world !");
+    }
+
+    @Test
+    void blockElementsBecomeLineBreaks() {
+        assertThat(HtmlText.toPlainText("<p>First</p><p>Second</p>line<br>next<div>last</div>"))
+                .isEqualTo("First\nSecond\nline\nnext\nlast");
+    }
+
+    @Test
+    void skipsScriptStyleHeadAndComments() {
+        String html = "<html><head><title>t</title></head><body><style>p{color:red}</style>"
+                + "<script>alert('<p>x</p>')</script><!-- <p>hidden</p> -->Text</body></html>";
+
+        assertThat(HtmlText.toPlainText(html)).isEqualTo("Text");
+    }
+
+    @Test
+    void decodesCharacterReferences() {
+        assertThat(HtmlText.toPlainText("a &amp; b &lt;c&gt; &quot;d&quot; &#39;e&#x27; &#128512;"))
+                .isEqualTo("a & b <c> \"d\" 'e' 😀");
+    }
+
+    @Test
+    void nonBreakingSpacesCollapseLikeSpaces() {
+        assertThat(HtmlText.toPlainText("a&nbsp;&nbsp; b&#160;c")).isEqualTo("a b c");
+    }
+
+    @Test
+    void keepsUnknownOrBrokenReferencesAsText() {
+        assertThat(HtmlText.toPlainText("AT&T &bogus; &#xZZ; 5 & 6")).isEqualTo("AT&T &bogus; &#xZZ; 5 & 6");
+    }
+
+    @Test
+    void unterminatedTagEndsTheText() {
+        assertThat(HtmlText.toPlainText("done <a href=")).isEqualTo("done");
+    }
+
+    @Test
+    void emptyInput() {
+        assertThat(HtmlText.toPlainText(null)).isEmpty();
+        assertThat(HtmlText.toPlainText("")).isEmpty();
+    }
+}
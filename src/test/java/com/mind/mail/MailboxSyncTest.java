@@ -0,0 +1,164 @@
+package com.mind.mail;
+
+import com.microsoft.graph.models.Message;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailboxSyncTest {
+
+    private static final String DELTA = "/me/mailFolders/inbox/messages/delta()";
+    private static final String DELTA_ROUTE = "/me/mailFolders/inbox/messages/delta\\(\\)";
+
+    private GraphStub graph;
+    private MessageCache cache;
+    private MailboxSync sync;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+        cache = new MessageCache(100, 600, List.of());
+        sync = new MailboxSync(graph.client(), cache, "inbox", 60, 900, 7);
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void initialSyncFollowsPagesAndKeepsTheDeltaLink() {
+        graph.on("GET", DELTA_ROUTE, request -> request.query() != null && request.query().contains("page=2")
+                ? Reply.json(page(header("b", 2)) + deltaLink("token=1"))
+                : Reply.json(page(header("a", 1)) + nextLink("page=2")));
+
+        assertThat(sync.ensureFresh()).isTrue();
+
+        assertThat(ids(cache.recentHeaders(OffsetDateTime.now().minusDays(7), 10))).containsExactly("a", "b");
+        assertThat(graph.requests("GET", DELTA_ROUTE)).hasSize(2);
+        assertThat(graph.requests("GET", DELTA_ROUTE).get(0).query()).contains("filter");
+
+        // Within the staleness bound nothing goes to Graph
+        assertThat(sync.ensureFresh()).isTrue();
+        assertThat(graph.requests("GET", DELTA_ROUTE)).hasSize(2);
+    }
+
+    @Test
+    void laterRoundsApplyChangesAndRemovals() {
+        graph.on("GET", DELTA_ROUTE, request -> Reply.json(page(header("a", 2), header("b", 1)) + deltaLink("token=1")));
+        sync.ensureFresh();
+
+        graph.on("GET", DELTA_ROUTE, request -> request.query().contains("token=1")
+                ? Reply.json(page(header("c", 0), "{\"id\":\"a\",\"@removed\":{\"reason\":\"deleted\"}}")
+                        + deltaLink("token=2"))
+                : Reply.status(500));
+        sync.markStale();
+
+        assertThat(sync.ensureFresh()).isTrue();
+        assertThat(ids(cache.recentHeaders(OffsetDateTime.now().minusDays(7), 10))).containsExactly("c", "b");
+    }
+
+    @Test
+    void expiredDeltaTokenRestartsFromABaseline() {
+        graph.on("GET", DELTA_ROUTE, request -> Reply.json(page(header("a", 1)) + deltaLink("token=1")));
+        sync.ensureFresh();
+
+        graph.on("GET", DELTA_ROUTE, request -> request.query().contains("token=1")
+                ? Reply.json(410, "{\"error\":{\"code\":\"SyncStateNotFound\",\"message\":\"gone\"}}")
+                : Reply.json(page(header("z", 1)) + deltaLink("token=9")));
+        sync.markStale();
+
+        assertThat(sync.ensureFresh()).isTrue();
+        assertThat(ids(cache.recentHeaders(OffsetDateTime.now().minusDays(7), 10))).containsExactly("z");
+    }
+
+    @Test
+    void failedSyncTellsCallersToGoToGraph() {
+        graph.on("GET", DELTA_ROUTE, request -> Reply.json(400, "{\"error\":{\"code\":\"BadRequest\",\"message\":\"no\"}}"));
+
+        assertThat(sync.ensureFresh()).isFalse();
+    }
+
+    @Test
+    void concurrentReadersShareOneDeltaRound() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        graph.on("GET", DELTA_ROUTE, request -> {
+            await(release);
+            return Reply.json(page(header("a", 1)) + deltaLink("token=1"));
+        });
+
+        List<Future<Boolean>> readers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 500; i++) {
+                readers.add(executor.submit(sync::ensureFresh));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Boolean> reader : readers) {
+                assertThat(reader.get(10, TimeUnit.SECONDS)).isTrue();
+            }
+        }
+
+        assertThat(graph.requests("GET", DELTA_ROUTE)).hasSize(1);
+    }
+
+    @Test
+    void markingStaleDuringARoundTriggersAnother() {
+        graph.on("GET", DELTA_ROUTE, request -> {
+            if (!request.query().contains("token=")) {
+                // A change notification lands while the baseline is being read
+                sync.markStale();
+            }
+            return Reply.json(page(header("a", 1)) + deltaLink("token=1"));
+        });
+
+        sync.ensureFresh();
+        sync.ensureFresh();
+
+        assertThat(graph.requests("GET", DELTA_ROUTE)).hasSize(2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String page(String... messages) {
+        return "{\"value\":[" + String.join(",", messages) + "]";
+    }
+
+    private String nextLink(String query) {
+        return ",\"@odata.nextLink\":\"" + graph.baseUrl() + DELTA + "?" + query + "\"}";
+    }
+
+    private String deltaLink(String query) {
+        return ",\"@odata.deltaLink\":\"" + graph.baseUrl() + DELTA + "?" + query + "\"}";
+    }
+
+    private static String header(String id, int hoursAgo) {
+        return "{\"id\":\"" + id + "\",\"subject\":\"Subject " + id + "\",\"conversationId\":\"conv-" + id
+                + "\",\"receivedDateTime\":\"" + OffsetDateTime.now(ZoneOffset.UTC).minusHours(hoursAgo) + "\"}";
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
@@ -0,0 +1,161 @@
+package com.mind.mail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.users.item.messages.item.createreply.CreateReplyPostRequestBody;
+import com.microsoft.kiota.RequestInformation;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageBatchTest {
+
+    private static final String BATCH_ROUTE = "/\\$batch";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private GraphStub graph;
+    private MessageCache cache;
+    private MessageBatch batch;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+        cache = new MessageCache(100, 600, List.of());
+        batch = new MessageBatch(graph.client(), cache, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void splitsIdsIntoBatchesOfTwenty() {
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> subResponse(step, 200, message(step))));
+        List<String> ids = IntStream.range(0, 45).mapToObj(i -> "m" + i).toList();
+
+        List<MessageBatch.Result> results = batch.getMessages(ids);
+
+        assertThat(results).extracting(MessageBatch.Result::id).containsExactlyElementsOf(ids);
+        assertThat(results).allMatch(MessageBatch.Result::success);
+        assertThat(graph.requests("POST", BATCH_ROUTE)).hasSize(3);
+        assertThat(cache.getMessage("m44")).isNotNull();
+    }
+
+    @Test
+    void resendsThrottledSubRequestsAfterRetryAfter() {
+        Set<String> throttledOnce = ConcurrentHashMap.newKeySet();
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> {
+            String id = messageId(step);
+            if (id.startsWith("slow") && throttledOnce.add(id)) {
+                return "{\"id\":\"" + step.get("id").asText() + "\",\"status\":429,"
+                        + "\"headers\":{\"Retry-After\":\"1\",\"Content-Type\":\"application/json\"},"
+                        + "\"body\":{\"error\":{\"code\":\"TooManyRequests\",\"message\":\"throttled\"}}}";
+            }
+            return subResponse(step, 200, message(step));
+        }));
+
+        List<MessageBatch.Result> results = batch.getMessages(List.of("a", "slow1", "b", "slow2"));
+
+        assertThat(results).extracting(MessageBatch.Result::id).containsExactly("a", "slow1", "b", "slow2");
+        assertThat(results).allMatch(MessageBatch.Result::success);
+        List<GraphStub.Request> sent = graph.requests("POST", BATCH_ROUTE);
+        assertThat(sent).hasSize(2);
+        // Only the throttled sub-requests go out again
+        assertThat(steps(sent.get(1).body())).extracting(this::messageId).containsExactlyInAnyOrder("slow1", "slow2");
+    }
+
+    @Test
+    void givesUpOnThrottlingAfterBoundedAttempts() {
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> "{\"id\":\"" + step.get("id").asText() + "\",\"status\":429,"
+                + "\"headers\":{\"Retry-After\":\"0\",\"Content-Type\":\"application/json\"},"
+                + "\"body\":{\"error\":{\"code\":\"TooManyRequests\",\"message\":\"throttled\"}}}"));
+
+        List<MessageBatch.Result> results = batch.deleteMessages(List.of("a"));
+
+        assertThat(results).singleElement().satisfies(result -> {
+            assertThat(result.success()).isFalse();
+            assertThat(result.status()).isEqualTo(429);
+        });
+        assertThat(graph.requests("POST", BATCH_ROUTE)).hasSize(MessageBatch.MAX_ATTEMPTS);
+    }
+
+    @Test
+    void doesNotRepeatNonIdempotentRequestsAfterServerErrors() {
+        AtomicInteger batches = new AtomicInteger();
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> {
+            batches.incrementAndGet();
+            return subResponse(step, 503, "{\"error\":{\"code\":\"ServiceUnavailable\",\"message\":\"busy\"}}");
+        }));
+        Map<String, RequestInformation> requests = Map.of("op-1",
+                graph.client().me().messages().byMessageId("a").createReply().toPostRequestInformation(
+                        new CreateReplyPostRequestBody()));
+
+        List<MessageBatch.Result> results = batch.send(requests, true, false);
+
+        assertThat(results).singleElement().satisfies(result -> assertThat(result.status()).isEqualTo(503));
+        assertThat(batches).hasValue(1);
+    }
+
+    @Test
+    void cachedMessagesAreNotRequested() {
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> subResponse(step, 200, message(step))));
+        batch.getMessages(List.of("a"));
+
+        batch.getMessages(List.of("a"));
+
+        assertThat(graph.requests("POST", BATCH_ROUTE)).hasSize(1);
+    }
+
+    private static Function<GraphStub.Request, Reply> batchReply(Function<JsonNode, String> answer) {
+        return request -> {
+            List<String> responses = new ArrayList<>();
+            for (JsonNode step : steps(request.body())) {
+                responses.add(answer.apply(step));
+            }
+            return Reply.json("{\"responses\":[" + String.join(",", responses) + "]}");
+        };
+    }
+
+    private static List<JsonNode> steps(String body) {
+        try {
+            List<JsonNode> steps = new ArrayList<>();
+            JSON.readTree(body).get("requests").forEach(steps::add);
+            return steps;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String messageId(JsonNode step) {
+        String url = step.get("url").asText();
+        int start = url.indexOf("/messages/") + "/messages/".length();
+        int end = url.indexOf('/', start);
+        return url.substring(start, end < 0 ? url.length() : end).replaceAll("\\?.*", "");
+    }
+
+    private static String subResponse(JsonNode step, int status, String body) {
+        return "{\"id\":\"" + step.get("id").asText() + "\",\"status\":" + status
+                + ",\"headers\":{\"Content-Type\":\"application/json\"},\"body\":" + body + "}";
+    }
+
+    private String message(JsonNode step) {
+        String id = messageId(step);
+        return "{\"id\":\"" + id + "\",\"subject\":\"Subject " + id + "\"}";
+    }
+}
@@ -0,0 +1,71 @@
+package com.mind.mail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import com.mind.json.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageJsonTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void slicesNeverSplitSurrogatePairs() {
+        Message message = message("ab📧cd", BodyType.Text);
+
+        MessageJson.BodySlice slice = MessageJson.sliceBody(message, false, 0, 3);
+
+        assertThat(slice.content()).isEqualTo("ab");
+        assertThat(slice.truncated()).isTrue();
+        assertThat(MessageJson.sliceBody(message, false, 2, 3).content()).isEqualTo("📧c");
+    }
+
+    @Test
+    void convertsHtmlOnlyWhenAskedFor() {
+        Message message = message("<p>Hi</p><p>there</p>", BodyType.Html);
+
+        assertThat(MessageJson.sliceBody(message, true, 0, 100).content()).isEqualTo("Hi\nthere");
+        assertThat(MessageJson.sliceBody(message, true, 0, 100).format()).isEqualTo("text");
+        assertThat(MessageJson.sliceBody(message, false, 0, 100).format()).isEqualTo("html");
+    }
+
+    @Test
+    void messageShapeIsValidJsonForHostileContent() throws Exception {
+        Message message = message("</script>\u0000 \"quoted\"\uD800", BodyType.Html);
+        message.setId("id-1");
+        message.setSubject("Re: \"hello\"\n");
+        Recipient to = new Recipient();
+        EmailAddress address = new EmailAddress();
+        address.setAddress("b@example.com");
+        to.setEmailAddress(address);
+        message.setToRecipients(List.of(to));
+
+        JsonWriter json = new JsonWriter();
+        MessageJson.writeMessage(json, message, MessageJson.sliceBody(message, false, 0, 10));
+        JsonNode node = MAPPER.readTree(json.toString());
+
+        assertThat(node.get("subject").asText()).isEqualTo("Re: \"hello\"\n");
+        assertThat(node.get("to").get(0).asText()).isEqualTo("b@example.com");
+        assertThat(node.get("from").asText()).isEqualTo("unknown");
+        assertThat(node.get("body").asText()).isEqualTo("</script>\u0000");
+        assertThat(node.get("nextOffset").asInt()).isEqualTo(10);
+    }
+
+    private static Message message(String content, BodyType type) {
+        ItemBody body = new ItemBody();
+        body.setContent(content);
+        body.setContentType(type);
+        Message message = new Message();
+        message.setBody(body);
+        return message;
+    }
+}
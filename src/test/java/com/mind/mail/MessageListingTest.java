@@ -0,0 +1,142 @@
+package com.mind.mail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageListingTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String DELTA_ROUTE = "/me/mailFolders/inbox/messages/delta\\(\\)";
+    private static final String FOLDER_MESSAGES = "/me/mailFolders/inbox/messages";
+    private static final OffsetDateTime NOW = OffsetDateTime.now(ZoneOffset.UTC).withNano(0);
+
+    private GraphStub graph;
+    private GraphServiceClient client;
+    private MessageCache cache;
+    private MessageListing listing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        graph = GraphStub.start();
+        client = graph.client();
+        cache = new MessageCache(100, 600, List.of());
+        listing = new MessageListing(client, cache, new MailboxSync(client, cache, "inbox", 60, 900, 7), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        graph.close();
+    }
+
+    @Test
+    void cacheCursorResumesAfterTheLastMessageWhenMailArrives() throws Exception {
+        // Two messages share a timestamp, so the ID has to break the tie
+        graph.on("GET", DELTA_ROUTE, request -> Reply.json("{\"value\":[" + header("a", 1) + "," + header("b", 2)
+                + "," + header("c", 2) + "," + header("d", 3) + "],\"@odata.deltaLink\":\"" + graph.baseUrl()
+                + "/me/mailFolders/inbox/messages/delta()?token=1\"}"));
+
+        MessageListing.Page first = listing.list(2, null, count -> { });
+        assertThat(ids(first)).containsExactly("a", "c");
+
+        cache.putHeader(message("new", 0));
+
+        MessageListing.Page second = listing.list(2, first.nextCursor(), count -> { });
+        assertThat(ids(second)).containsExactly("b", "d");
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void graphFallbackListsTheSyncedFolderAndKeepsPageLinksServerSide() throws Exception {
+        graph.on("GET", DELTA_ROUTE, request -> Reply.status(500));
+        graph.on("GET", FOLDER_MESSAGES, request -> request.query().contains("page=2")
+                ? Reply.json("{\"value\":[" + header("c", 3) + "]}")
+                : Reply.json("{\"value\":[" + header("a", 1) + "," + header("b", 2) + "],\"@odata.nextLink\":\""
+                        + graph.baseUrl() + FOLDER_MESSAGES + "?page=2\"}"));
+
+        MessageListing.Page first = listing.list(2, null, count -> { });
+        assertThat(ids(first)).containsExactly("a", "b");
+        assertThat(graph.requests("GET", "/me/messages")).isEmpty();
+        assertThat(decoded(first.nextCursor())).doesNotContain("http", "page=2");
+
+        MessageListing.Page second = listing.list(2, first.nextCursor(), count -> { });
+        assertThat(ids(second)).containsExactly("c");
+    }
+
+    @Test
+    void graphCursorsAreBoundToTheListingThatIssuedThem() throws Exception {
+        graph.on("GET", DELTA_ROUTE, request -> Reply.status(500));
+        graph.on("GET", FOLDER_MESSAGES, request -> Reply.json("{\"value\":[" + header("a", 1) + ","
+                + header("b", 2) + "," + header("c", 3) + "]}"));
+        String cursor = listing.list(1, null, count -> { }).nextCursor();
+
+        MessageCache otherCache = new MessageCache(100, 600, List.of());
+        MessageListing otherMailbox = new MessageListing(client, otherCache,
+                new MailboxSync(client, otherCache, "inbox", 60, 900, 7), 2);
+
+        assertThatThrownBy(() -> otherMailbox.list(1, cursor, count -> { }))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("expired");
+    }
+
+    @Test
+    void rejectsForgedCursors() {
+        String url = MessageListing.encode("g", graph.baseUrl() + "/users/someone-else/messages");
+
+        assertThatThrownBy(() -> listing.list(1, url, count -> { })).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> listing.list(1, "%%%", count -> { })).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> listing.list(1, MessageListing.encode("c", "x", "y", "z"), count -> { }))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> listing.list(1, MessageListing.encode("x", "1"), count -> { }))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void cursorCodecRoundTrips() {
+        String cursor = MessageListing.encode("c", "1700000000000", "2026-10-18T10:00:00Z", "AAMk=|odd/id+");
+
+        assertThat(MessageListing.decode(cursor))
+                .containsExactly("c", "1700000000000", "2026-10-18T10:00:00Z", "AAMk=|odd/id+");
+        assertThat(MessageListing.decode(null)).isNull();
+        assertThat(MessageListing.decode(" ")).isNull();
+    }
+
+    private static String decoded(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> ids(MessageListing.Page page) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (JsonNode node : MAPPER.readTree(page.json())) {
+            ids.add(node.get("id").asText());
+        }
+        return ids;
+    }
+
+    private static String header(String id, int minutesAgo) {
+        return "{\"id\":\"" + id + "\",\"subject\":\"S\",\"receivedDateTime\":\"" + NOW.minusMinutes(minutesAgo) + "\"}";
+    }
+
+    private static Message message(String id, int minutesAgo) {
+        Message message = new Message();
+        message.setId(id);
+        message.setReceivedDateTime(NOW.minusMinutes(minutesAgo));
+        return message;
+    }
+}
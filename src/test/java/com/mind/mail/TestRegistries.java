@@ -0,0 +1,39 @@
+package com.mind.mail;
+
+import com.mind.graph.GraphStub;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+/**
+ * Mailbox registries wired against a {@link GraphStub}, with small caches and the default mailbox
+ * enabled. The caller starts and stops them.
+ */
+public final class TestRegistries {
+
+    private TestRegistries() {
+    }
+
+    public static MailboxRegistry against(GraphStub graph, Path indexDirectory) {
+        MailboxRegistry registry = new MailboxRegistry(graph.clients(4), graph.client());
+        ReflectionTestUtils.setField(registry, "defaultEnabled", true);
+        ReflectionTestUtils.setField(registry, "idleTimeoutSeconds", 900L);
+        ReflectionTestUtils.setField(registry, "maxOpen", 10);
+        ReflectionTestUtils.setField(registry, "messageBudget", 1000);
+        ReflectionTestUtils.setField(registry, "maxMessages", 100);
+        ReflectionTestUtils.setField(registry, "messageTtlSeconds", 600L);
+        ReflectionTestUtils.setField(registry, "syncFolder", "inbox");
+        ReflectionTestUtils.setField(registry, "stalenessSeconds", 30L);
+        ReflectionTestUtils.setField(registry, "pushStalenessSeconds", 900L);
+        ReflectionTestUtils.setField(registry, "windowDays", 7);
+        ReflectionTestUtils.setField(registry, "pageSize", 50);
+        ReflectionTestUtils.setField(registry, "maxConcurrentBatches", 2);
+        ReflectionTestUtils.setField(registry, "indexDirectory", indexDirectory.toString());
+        ReflectionTestUtils.setField(registry, "flushDocs", 100);
+        ReflectionTestUtils.setField(registry, "maxSegments", 4);
+        ReflectionTestUtils.setField(registry, "maxThreadMessages", 50);
+        ReflectionTestUtils.setField(registry, "maxCachedThreads", 10);
+        ReflectionTestUtils.setField(registry, "threadTtlSeconds", 60L);
+        return registry;
+    }
+}
@@ -0,0 +1,170 @@
+package com.mind.notify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import com.mind.mail.Mailbox;
+import com.mind.mail.MailboxRegistry;
+import com.mind.mail.TestRegistries;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpStreamableServerSession;
+import io.modelcontextprotocol.spec.McpStreamableServerTransportProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResourceNotifierTest {
+
+    private static final String CLIENT_STATE = "secret-state";
+    private static final String INBOX = "outlook://inbox";
+
+    @TempDir
+    Path indexDir;
+
+    private GraphStub graph;
+    private MailboxRegistry registry;
+    private MailSubscriptions subscriptions;
+    private ResourceNotifier notifier;
+    private McpStreamableServerSession.Factory sessionFactory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        graph = GraphStub.start();
+        graph.on("POST", "/subscriptions", request -> Reply.json(201, "{\"id\":\"sub-1\",\"expirationDateTime\":\""
+                + OffsetDateTime.now().plusHours(1) + "\"}"));
+        graph.on("GET", "/me/mailFolders/inbox/messages/delta\\(\\)", request -> Reply.json(
+                "{\"value\":[],\"@odata.deltaLink\":\"" + graph.baseUrl()
+                        + "/me/mailFolders/inbox/messages/delta()?token=1\"}"));
+
+        registry = TestRegistries.against(graph, indexDir);
+        registry.start();
+
+        subscriptions = new MailSubscriptions(registry);
+        ReflectionTestUtils.setField(subscriptions, "publicUrl", "https://mcp.example.com");
+        ReflectionTestUtils.setField(subscriptions, "clientState", CLIENT_STATE);
+        ReflectionTestUtils.setField(subscriptions, "lifetimeMinutes", 60L);
+
+        notifier = new ResourceNotifier(new CapturingTransport(), registry);
+        subscriptions.addChangeListener(mailboxId -> notifier.resourceUpdated(mailboxId, INBOX));
+        subscriptions.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptions.stop();
+        registry.stop();
+        graph.close();
+    }
+
+    @Test
+    void notifiesOnlySessionsOfTheChangedMailbox() throws Exception {
+        RecordingSession mine = startSession("s1");
+        RecordingSession others = startSession("s2");
+        RecordingSession unbound = startSession("s3");
+        try (MailboxRegistry.Lease lease = registry.acquire(null)) {
+            registry.bindSession("s1", lease.mailbox());
+        }
+        registry.bindSession("s2", new Mailbox("other", graph.client(), null, null, null, null, null, null));
+
+        GraphWebhookServlet webhook = new GraphWebhookServlet(subscriptions, new ObjectMapper());
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        // Until the reconcile pass has subscribed, notifications for sub-1 are dropped as unknown
+        while (mine.sent.isEmpty() && System.nanoTime() < deadline) {
+            MockHttpServletResponse response = post(webhook, "{\"value\":[{\"subscriptionId\":\"sub-1\","
+                    + "\"clientState\":\"" + CLIENT_STATE + "\",\"changeType\":\"created\","
+                    + "\"resourceData\":{\"id\":\"m1\"}}]}");
+            assertThat(response.getStatus()).isEqualTo(202);
+            Thread.sleep(100);
+        }
+
+        assertThat(mine.sent).isNotEmpty()
+                .allSatisfy(sent -> assertThat(sent).isEqualTo(INBOX));
+        assertThat(others.sent).isEmpty();
+        assertThat(unbound.sent).isEmpty();
+    }
+
+    @Test
+    void dropsNotificationsWithTheWrongClientState() throws Exception {
+        RecordingSession mine = startSession("s1");
+        try (MailboxRegistry.Lease lease = registry.acquire(null)) {
+            registry.bindSession("s1", lease.mailbox());
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (graph.requests("POST", "/subscriptions").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(200);
+
+        subscriptions.handle(new ObjectMapper().readTree("{\"value\":[{\"subscriptionId\":\"sub-1\","
+                + "\"clientState\":\"forged\",\"changeType\":\"created\",\"resourceData\":{\"id\":\"m1\"}}]}"));
+
+        assertThat(mine.sent).isEmpty();
+    }
+
+    private RecordingSession startSession(String id) {
+        RecordingSession session = new RecordingSession(id);
+        McpStreamableServerSession.Factory factory = request ->
+                new McpStreamableServerSession.McpStreamableServerSessionInit(session, Mono.empty());
+        notifier.setSessionFactory(factory);
+        sessionFactory.startSession(null);
+        return session;
+    }
+
+    private static MockHttpServletResponse post(GraphWebhookServlet webhook, String payload) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", MailSubscriptions.WEBHOOK_PATH);
+        request.setContentType("application/json");
+        request.setContent(payload.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        webhook.service(request, response);
+        return response;
+    }
+
+    private static final class RecordingSession extends McpStreamableServerSession {
+
+        final List<String> sent = new CopyOnWriteArrayList<>();
+
+        RecordingSession(String id) {
+            super(id, null, null, Duration.ofSeconds(5), Map.of(), Map.of());
+        }
+
+        @Override
+        public Mono<Void> sendNotification(String method, Object params) {
+            assertThat(method).isEqualTo(McpSchema.METHOD_NOTIFICATION_RESOURCES_UPDATED);
+            sent.add(((McpSchema.ResourcesUpdatedNotification) params).uri());
+            return Mono.empty();
+        }
+    }
+
+    private final class CapturingTransport implements McpStreamableServerTransportProvider {
+
+        @Override
+        public void setSessionFactory(McpStreamableServerSession.Factory factory) {
+            sessionFactory = factory;
+        }
+
+        @Override
+        public Mono<Void> notifyClients(String method, Object params) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> closeGracefully() {
+            return Mono.empty();
+        }
+    }
+}
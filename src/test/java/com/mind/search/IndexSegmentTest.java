@@ -0,0 +1,80 @@
+package com.mind.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IndexSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenPostingsReadBackThroughTheMapping() throws IOException {
+        TreeMap<String, IntList> postings = new TreeMap<>();
+        postings.put("apple", pairs(1, 2, 4, 1));
+        postings.put("banana", pairs(3, 5));
+        postings.put("zürich", pairs(4, 3));
+        Path path = directory.resolve("seg-000007.idx");
+
+        IndexSegment.write(path, 3, 4, postings);
+        IndexSegment segment = IndexSegment.open(path, 7);
+
+        assertThat(segment.generation()).isEqualTo(7);
+        assertThat(segment.minGeneration()).isEqualTo(3);
+        assertThat(segment.maxOrdinal()).isEqualTo(4);
+        assertThat(segment.docFrequency("apple")).isEqualTo(2);
+        assertThat(segment.docFrequency("zürich")).isEqualTo(1);
+        assertThat(segment.docFrequency("cherry")).isZero();
+        assertThat(visit(segment, "apple")).containsExactly(1, 2, 4, 1);
+        assertThat(visit(segment, "banana")).containsExactly(3, 5);
+        assertThat(visit(segment, "aardvark")).isEmpty();
+
+        List<String> terms = new ArrayList<>();
+        segment.forEach((term, ordinal, frequency) -> terms.add(term + ":" + ordinal));
+        assertThat(terms).containsExactly("apple:1", "apple:4", "banana:3", "zürich:4");
+    }
+
+    @Test
+    void emptySegment() throws IOException {
+        Path path = directory.resolve("seg-000000.idx");
+
+        IndexSegment.write(path, 0, -1, new TreeMap<>());
+
+        assertThat(IndexSegment.open(path, 0).docFrequency("anything")).isZero();
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path path = directory.resolve("seg-000001.idx");
+        Files.writeString(path, "definitely not a segment");
+
+        assertThatThrownBy(() -> IndexSegment.open(path, 1)).isInstanceOf(IOException.class);
+    }
+
+    private static IntList pairs(int... values) {
+        IntList list = new IntList();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static List<Integer> visit(IndexSegment segment, String term) {
+        List<Integer> values = new ArrayList<>();
+        segment.postings(term, (ordinal, frequency) -> {
+            values.add(ordinal);
+            values.add(frequency);
+        });
+        return values;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mind.search;
+
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import com.mind.mail.MessageCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private SearchIndex index;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Test
+    void subjectMatchesRankAboveBodyMatches() throws Exception {
+        index = open(100, 8);
+        index.messageUpdated(message("body", "Weekly notes", "alice@example.com", "the budget is attached"), true);
+        index.messageUpdated(message("subject", "Budget review", "bob@example.com", "see attached"), true);
+        index.messageUpdated(message("other", "Lunch", "carol@example.com", "pizza"), true);
+        index.awaitUpdates();
+
+        assertThat(ids(index.search("budget", 10))).containsExactly("subject", "body");
+        assertThat(ids(index.search("carol", 10))).containsExactly("other");
+        assertThat(index.search("nothing-matches", 10)).isEmpty();
+    }
+
+    @Test
+    void flushedDocumentsSurviveAReopen() throws Exception {
+        index = open(2, 8);
+        index.messageUpdated(message("a", "Quarterly report", "x@example.com", "numbers"), true);
+        index.messageUpdated(message("b", "Quarterly plan", "y@example.com", "goals"), true);
+        index.messageUpdated(message("c", "Deleted later", "z@example.com", "quarterly"), true);
+        index.messageRemoved("c");
+        index.close();
+
+        index = open(2, 8);
+
+        assertThat(ids(index.search("quarterly", 10))).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void updatesReplaceTheIndexedText() throws Exception {
+        index = open(100, 8);
+        index.messageUpdated(message("a", "Draft", "x@example.com", "first version"), true);
+        index.messageUpdated(message("a", "Draft", "x@example.com", "second version"), true);
+        index.awaitUpdates();
+
+        assertThat(index.search("first", 10)).isEmpty();
+        assertThat(ids(index.search("second", 10))).containsExactly("a");
+    }
+
+    @Test
+    void mergesSegmentsAndDropsRemovedDocuments() throws Exception {
+        index = open(1, 2);
+        for (int i = 0; i < 6; i++) {
+            index.messageUpdated(message("m" + i, "Invoice " + i, "billing@example.com", "due"), true);
+        }
+        index.messageRemoved("m3");
+        index.awaitUpdates();
+
+        assertThat(ids(index.search("invoice", 10))).containsExactlyInAnyOrder("m0", "m1", "m2", "m4", "m5");
+        assertThat(segmentFiles()).hasSizeLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void headersPrunedFromTheCacheLeaveTheIndex() throws Exception {
+        index = open(100, 8);
+        MessageCache cache = new MessageCache(10, 600, List.of(index));
+        Message old = message("old", "Ancient thread", "x@example.com", null);
+        old.setReceivedDateTime(OffsetDateTime.now().minusDays(30));
+        cache.putHeader(old);
+        cache.putHeader(message("new", "Ancient history talk", "y@example.com", null));
+
+        cache.pruneHeadersBefore(OffsetDateTime.now().minusDays(7));
+        index.awaitUpdates();
+
+        assertThat(ids(index.search("ancient", 10))).containsExactly("new");
+    }
+
+    private SearchIndex open(int flushDocs, int maxSegments) throws IOException {
+        SearchIndex opened = new SearchIndex(directory, flushDocs, maxSegments);
+        opened.open();
+        return opened;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".idx")).toList();
+        }
+    }
+
+    private static Message message(String id, String subject, String from, String body) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSubject(subject);
+        message.setReceivedDateTime(OffsetDateTime.now());
+        EmailAddress address = new EmailAddress();
+        address.setAddress(from);
+        Recipient sender = new Recipient();
+        sender.setEmailAddress(address);
+        message.setFrom(sender);
+        message.setBodyPreview(body);
+        if (body != null) {
+            ItemBody itemBody = new ItemBody();
+            itemBody.setContentType(BodyType.Text);
+            itemBody.setContent(body);
+            message.setBody(itemBody);
+        }
+        return message;
+    }
+
+    private static List<String> ids(List<SearchIndex.Hit> hits) {
+        return hits.stream().map(SearchIndex.Hit::id).toList();
+    }
+}
@@ -0,0 +1,105 @@
+package com.mind.writes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class WriteJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayYieldsTheLatestStateOfEachOperation() throws IOException {
+        Path file = dir.resolve("writes.log");
+        WriteJournal journal = new WriteJournal(file);
+        journal.open(List.of());
+        Operation draft = draft("op-1", "Dear Bob");
+        Operation delete = new Operation("op-2", "me", Operation.Type.DELETE, "m2", null, 2);
+        journal.submitted(draft);
+        journal.submitted(delete);
+        delete.complete(Operation.Status.FAILED, null, "gone", 5);
+        journal.completed(delete);
+        journal.close();
+
+        Map<String, Operation> replayed = new WriteJournal(file).replay();
+
+        assertThat(replayed.keySet()).containsExactly("op-1", "op-2");
+        assertThat(replayed.get("op-1").status()).isEqualTo(Operation.Status.PENDING);
+        assertThat(replayed.get("op-1").body()).isEqualTo("Dear Bob");
+        assertThat(replayed.get("op-2").status()).isEqualTo(Operation.Status.FAILED);
+        assertThat(replayed.get("op-2").error()).isEqualTo("gone");
+        assertThat(replayed.get("op-2").completedAt()).isEqualTo(5);
+    }
+
+    @Test
+    void recordCutShortByACrashIsIgnored() throws IOException {
+        Path file = dir.resolve("writes.log");
+        WriteJournal journal = new WriteJournal(file);
+        journal.open(List.of());
+        journal.submitted(draft("op-1", "first"));
+        journal.submitted(draft("op-2", "second"));
+        journal.close();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+        assertThat(new WriteJournal(file).replay().keySet()).containsExactly("op-1");
+    }
+
+    @Test
+    void compactionDropsRemovedOperationsAndFinishedBodies() throws IOException {
+        Path file = dir.resolve("writes.log");
+        WriteJournal journal = new WriteJournal(file);
+        journal.open(List.of());
+        Operation sent = draft("op-1", "secret reply");
+        Operation expired = draft("op-2", "old reply");
+        Operation pending = draft("op-3", "still pending");
+        for (Operation operation : List.of(sent, expired, pending)) {
+            journal.submitted(operation);
+        }
+        sent.complete(Operation.Status.SUCCEEDED, "draft-1", null, 10);
+        journal.completed(sent);
+
+        journal.compact(() -> List.of(sent, pending));
+        // Appends keep working after a compaction
+        journal.submitted(draft("op-4", "later"));
+        journal.close();
+
+        Map<String, Operation> replayed = new WriteJournal(file).replay();
+        assertThat(replayed.keySet()).containsExactly("op-1", "op-3", "op-4");
+        assertThat(replayed.get("op-1").result()).isEqualTo("draft-1");
+        assertThat(replayed.get("op-1").body()).isNull();
+        assertThat(replayed.get("op-3").body()).isEqualTo("still pending");
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+                .doesNotContain("secret reply", "old reply");
+    }
+
+    @Test
+    void journalIsReadableByItsOwnerOnly() throws IOException {
+        assumeTrue(dir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path file = dir.resolve("writes.log");
+        Files.writeString(file, "");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+
+        WriteJournal journal = new WriteJournal(file);
+        journal.open(List.of());
+        journal.close();
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-------");
+    }
+
+    private static Operation draft(String id, String body) {
+        return new Operation(id, "me", Operation.Type.DRAFT_REPLY, "m-" + id, body, 1);
+    }
+}
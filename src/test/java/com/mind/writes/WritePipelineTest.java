@@ -0,0 +1,230 @@
+package com.mind.writes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import com.mind.mail.MailboxRegistry;
+import com.mind.mail.TestRegistries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WritePipelineTest {
+
+    private static final String BATCH_ROUTE = "/\\$batch";
+    private static final String MESSAGES_ROUTE = "/me/messages";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private GraphStub graph;
+    private MailboxRegistry registry;
+    private WritePipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        graph = GraphStub.start();
+        graph.on("GET", MESSAGES_ROUTE, request -> Reply.json("{\"value\":[]}"));
+        registry = TestRegistries.against(graph, dir.resolve("index"));
+        registry.start();
+        pipeline = pipeline();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pipeline.stop();
+        registry.stop();
+        graph.close();
+    }
+
+    @Test
+    void draftTaggedWithItsOperationIsNotCreatedAgainAfterAServerError() throws Exception {
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> subResponse(step, 503,
+                "{\"error\":{\"code\":\"ServiceUnavailable\",\"message\":\"busy\"}}")));
+        // The 503 came back, but the draft was created all the same
+        graph.on("GET", MESSAGES_ROUTE, request -> Reply.json("{\"value\":[{\"id\":\"draft-1\"}]}"));
+        pipeline.start();
+
+        Operation operation = submitDraft("m1", "Thanks!");
+
+        awaitDone(operation);
+        assertThat(operation.status()).isEqualTo(Operation.Status.SUCCEEDED);
+        assertThat(operation.result()).isEqualTo("draft-1");
+        List<GraphStub.Request> batches = graph.requests("POST", BATCH_ROUTE);
+        assertThat(batches).hasSize(1);
+        JsonNode step = steps(batches.get(0).body()).get(0);
+        assertThat(step.path("body").path("Message").path("singleValueExtendedProperties").get(0)
+                .path("value").asText()).isEqualTo(operation.id());
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).singleElement()
+                .satisfies(lookup -> assertThat(lookup.query()).contains(operation.id()));
+    }
+
+    @Test
+    void draftIsCreatedAgainWhenTheLookupFindsNone() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        graph.on("POST", BATCH_ROUTE, request -> batches.incrementAndGet() == 1
+                ? batchReply(step -> subResponse(step, 500, "{\"error\":{\"code\":\"x\",\"message\":\"x\"}}"))
+                        .apply(request)
+                : batchReply(step -> subResponse(step, 201, "{\"id\":\"draft-2\"}")).apply(request));
+        pipeline.start();
+
+        Operation operation = submitDraft("m1", "Thanks!");
+
+        awaitDone(operation);
+        assertThat(operation.status()).isEqualTo(Operation.Status.SUCCEEDED);
+        assertThat(operation.result()).isEqualTo("draft-2");
+        assertThat(batches).hasValue(2);
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).hasSize(1);
+    }
+
+    @Test
+    void throttledDraftIsSentAgainWithoutALookup() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        graph.on("POST", BATCH_ROUTE, request -> batches.incrementAndGet() == 1
+                ? batchReply(step -> subResponse(step, 429, "{\"error\":{\"code\":\"x\",\"message\":\"x\"}}"))
+                        .apply(request)
+                : batchReply(step -> subResponse(step, 201, "{\"id\":\"draft-3\"}")).apply(request));
+        pipeline.start();
+
+        Operation operation = submitDraft("m1", "Thanks!");
+
+        awaitDone(operation);
+        assertThat(operation.result()).isEqualTo("draft-3");
+        assertThat(graph.requests("GET", MESSAGES_ROUTE)).isEmpty();
+    }
+
+    @Test
+    void resumesJournaledOperationsAndLooksUpDraftsFirst() throws Exception {
+        WriteJournal journal = new WriteJournal(dir.resolve("writes.log"));
+        journal.open(List.of());
+        long now = System.currentTimeMillis();
+        journal.submitted(new Operation("op-draft", "me", Operation.Type.DRAFT_REPLY, "m1", "Hi", now));
+        journal.submitted(new Operation("op-delete", "me", Operation.Type.DELETE, "m2", null, now));
+        journal.close();
+        graph.on("GET", MESSAGES_ROUTE, request -> Reply.json("{\"value\":[{\"id\":\"draft-9\"}]}"));
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> subResponse(step, 204, "null")));
+
+        pipeline.start();
+
+        Operation draft = awaitDone("op-draft");
+        Operation delete = awaitDone("op-delete");
+        assertThat(draft.result()).isEqualTo("draft-9");
+        assertThat(delete.status()).isEqualTo(Operation.Status.SUCCEEDED);
+        // Only the delete was sent; the draft already existed
+        assertThat(graph.requests("POST", BATCH_ROUTE)).singleElement()
+                .satisfies(batch -> assertThat(steps(batch.body())).singleElement()
+                        .satisfies(step -> assertThat(step.path("method").asText()).isEqualTo("DELETE")));
+    }
+
+    @Test
+    void operationsOfAMailboxThatNeverOpensTimeOut() throws Exception {
+        WriteJournal journal = new WriteJournal(dir.resolve("writes.log"));
+        journal.open(List.of());
+        long now = System.currentTimeMillis();
+        journal.submitted(new Operation("op-old", "user-2", Operation.Type.DELETE, "m1", null,
+                now - Duration.ofHours(2).toMillis()));
+        journal.submitted(new Operation("op-new", "user-2", Operation.Type.DELETE, "m2", null, now));
+        journal.close();
+
+        pipeline.start();
+
+        Operation old = awaitDone("op-old");
+        assertThat(old.status()).isEqualTo(Operation.Status.FAILED);
+        Thread.sleep(200);
+        assertThat(operation("op-new").status()).isEqualTo(Operation.Status.PENDING);
+        assertThat(graph.requests("POST", BATCH_ROUTE)).isEmpty();
+    }
+
+    @Test
+    void finishedOperationsAreCompactedOutOfTheJournal() throws Exception {
+        graph.on("POST", BATCH_ROUTE, batchReply(step -> subResponse(step, 201, "{\"id\":\"draft-1\"}")));
+        pipeline.start();
+
+        Operation operation = submitDraft("m1", "a private reply");
+        awaitDone(operation);
+        Thread.sleep(1500);
+
+        assertThat(Files.readString(dir.resolve("writes.log"), StandardCharsets.ISO_8859_1))
+                .contains(operation.id())
+                .doesNotContain("a private reply");
+    }
+
+    private WritePipeline pipeline() {
+        WritePipeline pipeline = new WritePipeline(registry);
+        ReflectionTestUtils.setField(pipeline, "journalFile", dir.resolve("writes.log").toString());
+        ReflectionTestUtils.setField(pipeline, "lingerMillis", 10L);
+        ReflectionTestUtils.setField(pipeline, "retryDelayMillis", 50L);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 5);
+        ReflectionTestUtils.setField(pipeline, "retentionSeconds", 3600L);
+        ReflectionTestUtils.setField(pipeline, "pendingTimeoutSeconds", 3600L);
+        return pipeline;
+    }
+
+    private Operation submitDraft(String emailId, String body) throws IOException {
+        try (MailboxRegistry.Lease lease = registry.acquire(null)) {
+            return pipeline.submitDraftReply(emailId, body);
+        }
+    }
+
+    // Any mailbox's operation; find only sees those of the caller's mailbox
+    @SuppressWarnings("unchecked")
+    private Operation operation(String operationId) {
+        return ((Map<String, Operation>) ReflectionTestUtils.getField(pipeline, "operations")).get(operationId);
+    }
+
+    private Operation awaitDone(String operationId) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        Operation operation = operation(operationId);
+        while (operation.status() == Operation.Status.PENDING && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        return operation;
+    }
+
+    private void awaitDone(Operation operation) throws InterruptedException {
+        awaitDone(operation.id());
+    }
+
+    private static Function<GraphStub.Request, Reply> batchReply(Function<JsonNode, String> answer) {
+        return request -> {
+            List<String> responses = new ArrayList<>();
+            for (JsonNode step : steps(request.body())) {
+                responses.add(answer.apply(step));
+            }
+            return Reply.json("{\"responses\":[" + String.join(",", responses) + "]}");
+        };
+    }
+
+    private static List<JsonNode> steps(String body) {
+        try {
+            List<JsonNode> steps = new ArrayList<>();
+            JSON.readTree(body).get("requests").forEach(steps::add);
+            return steps;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String subResponse(JsonNode step, int status, String body) {
+        return "{\"id\":\"" + step.get("id").asText() + "\",\"status\":" + status
+                + ",\"headers\":{\"Content-Type\":\"application/json\"},\"body\":" + body + "}";
+    }
+}
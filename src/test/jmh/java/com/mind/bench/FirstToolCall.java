@@ -0,0 +1,126 @@
+package com.mind.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Time from launching the server to the first answered tool call, per set of JVM flags.
+ *
+ * Each run starts the jar in the {@code bench} profile, connects as soon as the port accepts and
+ * calls the tool once (cold), then calls it {@code --warm-calls} more times (warm). Compare a
+ * plain start with the fast-start flags; {@link GraphStubServer} must be running:
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.mind.bench.FirstToolCall \
+ *     -Dbench.args="--runs 5 --variants 'plain=;fast-start=-XX:SharedArchiveFile=outlook-mcp.jsa -Dspring.aot.enabled=true'"
+ * </pre>
+ */
+public final class FirstToolCall {
+
+    private static final long STARTUP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    private FirstToolCall() {
+    }
+
+    private record Run(long firstCallNanos, long coldCallNanos, long warmCallNanos) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Options.parse(args);
+        String jar = options.getOrDefault("jar", "target/outlook-mcp-1.0-SNAPSHOT.jar");
+        URI endpoint = URI.create(options.getOrDefault("url", "https://localhost:8443/mcp"));
+        int runs = Options.integer(options, "runs", 5);
+        int warmCalls = Options.integer(options, "warm-calls", 20);
+        String tool = options.getOrDefault("tool", "get_recent_emails");
+        String arguments = options.getOrDefault("arguments", "{}");
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        for (String variant : options.getOrDefault("variants", "plain=").split(";")) {
+            int eq = variant.indexOf('=');
+            String flags = variant.substring(eq + 1).trim();
+            variants.put(variant.substring(0, eq).trim(), flags.isEmpty() ? List.of() : Arrays.asList(flags.split("\\s+")));
+        }
+
+        HttpClient http = McpClient.httpClient();
+        Map<String, List<Run>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            List<Run> variantRuns = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                Run run = measure(http, endpoint, jar, variant.getValue(), tool, arguments, warmCalls);
+                System.out.printf("%s run %d: first tool call after %.0f ms%n", variant.getKey(), i + 1,
+                        run.firstCallNanos() / 1e6);
+                variantRuns.add(run);
+            }
+            results.put(variant.getKey(), variantRuns);
+        }
+
+        System.out.printf("%nTime to first %s call (median of %d runs)%n", tool, runs);
+        System.out.printf("%-12s %14s %14s %14s%n", "variant", "launch->call", "cold call", "warm call");
+        results.forEach((name, variantRuns) -> System.out.printf("%-12s %11.0f ms %11.1f ms %11.1f ms%n", name,
+                median(variantRuns, Run::firstCallNanos), median(variantRuns, Run::coldCallNanos),
+                median(variantRuns, Run::warmCallNanos)));
+    }
+
+    private static Run measure(HttpClient http, URI endpoint, String jar, List<String> jvmFlags, String tool,
+                               String arguments, int warmCalls) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmFlags);
+        command.addAll(List.of("-jar", jar, "--spring.profiles.active=bench"));
+        File log = File.createTempFile("outlook-mcp-first-call", ".log");
+        long launched = System.nanoTime();
+        Process server = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        try {
+            McpClient client = new McpClient(http, endpoint);
+            connect(client, server, launched, log);
+            long before = System.nanoTime();
+            client.callTool(tool, arguments);
+            long firstCall = System.nanoTime();
+
+            long[] warm = new long[Math.max(1, warmCalls)];
+            for (int i = 0; i < warm.length; i++) {
+                long start = System.nanoTime();
+                client.callTool(tool, arguments);
+                warm[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(warm);
+            // The server log is kept only when something went wrong
+            log.deleteOnExit();
+            return new Run(firstCall - launched, firstCall - before, warm[warm.length / 2]);
+        } finally {
+            server.destroy();
+            if (!server.waitFor(30, TimeUnit.SECONDS)) {
+                server.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    // Opens the session as soon as the server accepts connections
+    private static void connect(McpClient client, Process server, long launched, File log) throws Exception {
+        while (true) {
+            try {
+                client.initialize();
+                return;
+            } catch (ConnectException e) {
+                if (!server.isAlive() || System.nanoTime() - launched > STARTUP_TIMEOUT_NANOS) {
+                    throw new IOException("Server did not start; see " + log, e);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static double median(List<Run> runs, ToLongFunction<Run> metric) {
+        long[] values = runs.stream().mapToLong(metric).sorted().toArray();
+        return values[values.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,184 @@
+package com.mind.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mind.graph.GraphStub;
+import com.mind.graph.GraphStub.Reply;
+import com.mind.json.JsonWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local Graph stand-in for load tests, answering the routes the tools use from a synthetic
+ * mailbox.
+ *
+ * Run with the {@code bench} Maven profile and start the server with
+ * {@code --spring.profiles.active=bench}, which points it at port 8089:
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.mind.bench.GraphStubServer \
+ *     -Dbench.args="--messages 2000 --latency-ms 40"
+ * </pre>
+ * Every message is {@code --body-bytes} of HTML, five messages share a conversation, and each
+ * request waits {@code --latency-ms} before it is answered, standing in for Graph's service time.
+ */
+public final class GraphStubServer {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern MESSAGE = Pattern.compile("/me/messages/([^/]+)");
+    private static final Pattern CONVERSATION = Pattern.compile("conversationId eq '([^']+)'");
+    private static final int MESSAGES_PER_CONVERSATION = 5;
+
+    private final int messages;
+    private final String body;
+    private final long latencyMillis;
+    private final OffsetDateTime newest = OffsetDateTime.now(ZoneOffset.UTC);
+    private final AtomicLong drafts = new AtomicLong();
+
+    private GraphStubServer(int messages, int bodyBytes, long latencyMillis) {
+        this.messages = messages;
+        this.body = "<p>" + "x".repeat(Math.max(0, bodyBytes - 7)) + "</p>";
+        this.latencyMillis = latencyMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args);
+        GraphStubServer mailbox = new GraphStubServer(Options.integer(options, "messages", 2000),
+                Options.integer(options, "body-bytes", 4096), Options.integer(options, "latency-ms", 40));
+        GraphStub graph = GraphStub.start(Options.integer(options, "port", 8089));
+        mailbox.register(graph);
+        System.out.printf("Graph stand-in with %d messages listening on %s%n", mailbox.messages, graph.baseUrl());
+    }
+
+    private void register(GraphStub graph) {
+        graph.on("GET", "/me", request -> delayed(Reply.json("{\"id\":\"bench-user\"}")));
+        graph.on("GET", "/me/messages", request -> delayed(list(query(request.query()))));
+        graph.on("GET", "/me/messages/[^/]+", request -> delayed(Reply.json(message(id(request.path()), true))));
+        graph.on("GET", "/me/messages/[^/]+/attachments", request -> delayed(Reply.json("{\"value\":[]}")));
+        graph.on("GET", "/me/mailFolders/[^/]+/messages/delta\\(\\)",
+                request -> delayed(delta(graph.baseUrl() + request.path(), request.query())));
+        graph.on("POST", "/subscriptions", request -> delayed(Reply.json(201, "{\"id\":\"bench-subscription\","
+                + "\"expirationDateTime\":\"" + OffsetDateTime.now().plusHours(1) + "\"}")));
+        graph.on("PATCH", "/subscriptions/.+", request -> delayed(Reply.json("{\"id\":\"bench-subscription\","
+                + "\"expirationDateTime\":\"" + OffsetDateTime.now().plusHours(1) + "\"}")));
+        graph.on("DELETE", "/subscriptions/.+", request -> delayed(Reply.status(204)));
+        graph.on("POST", "/\\$batch", request -> delayed(batch(request.body())));
+    }
+
+    private Reply list(Map<String, String> query) {
+        int top = Integer.parseInt(query.getOrDefault("$top", "10"));
+        int skip = Integer.parseInt(query.getOrDefault("$skip", "0"));
+        String filter = query.getOrDefault("$filter", "");
+        Matcher conversation = CONVERSATION.matcher(filter);
+        int first = 0;
+        int count = messages;
+        if (conversation.find()) {
+            first = Integer.parseInt(conversation.group(1).substring("conv-".length())) * MESSAGES_PER_CONVERSATION;
+            count = Math.min(MESSAGES_PER_CONVERSATION, messages - first);
+        } else if (filter.contains("singleValueExtendedProperties")) {
+            // Draft lookup after an ambiguous failure: none of the stand-in's drafts are tagged
+            count = 0;
+        }
+        StringJoiner page = new StringJoiner(",", "{\"value\":[", "]");
+        for (int i = skip; i < Math.min(count, skip + top); i++) {
+            page.add(message(first + i, false));
+        }
+        String total = "true".equals(query.get("$count")) ? ",\"@odata.count\":" + count : "";
+        return Reply.json(page + total + "}");
+    }
+
+    private Reply delta(String url, String query) {
+        StringJoiner page = new StringJoiner(",", "{\"value\":[", "]");
+        if (query == null || !query.contains("token=")) {
+            // Baseline round: the whole mailbox; later rounds see no changes
+            for (int i = 0; i < messages; i++) {
+                page.add(message(i, false));
+            }
+        }
+        return Reply.json(page + ",\"@odata.deltaLink\":" + JsonWriter.quote(url + "?token=latest") + "}");
+    }
+
+    private Reply batch(String requestBody) {
+        JsonNode steps;
+        try {
+            steps = JSON.readTree(requestBody).path("requests");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StringJoiner responses = new StringJoiner(",", "{\"responses\":[", "]}");
+        for (JsonNode step : steps) {
+            String method = step.path("method").asText();
+            String url = step.path("url").asText().replaceAll("\\?.*", "");
+            String id = JsonWriter.quote(step.path("id").asText());
+            if (method.equals("DELETE")) {
+                responses.add("{\"id\":" + id + ",\"status\":204,\"headers\":{}}");
+            } else {
+                String answer = url.endsWith("/createReply")
+                        ? "{\"id\":\"draft-" + drafts.incrementAndGet() + "\"}"
+                        : message(id(url), true);
+                responses.add("{\"id\":" + id + ",\"status\":" + (method.equals("POST") ? 201 : 200)
+                        + ",\"headers\":{\"Content-Type\":\"application/json\"},\"body\":" + answer + "}");
+            }
+        }
+        return Reply.json(responses.toString());
+    }
+
+    private String message(int index, boolean withBody) {
+        JsonWriter json = new JsonWriter(withBody ? body.length() + 512 : 512).beginObject()
+                .field("id", "msg-" + index)
+                .field("conversationId", "conv-" + index / MESSAGES_PER_CONVERSATION)
+                .field("subject", "Bench message " + index)
+                .field("receivedDateTime", newest.minusMinutes(index).toString())
+                .field("bodyPreview", "Preview of bench message " + index)
+                .field("hasAttachments", false)
+                .name("from").beginObject().name("emailAddress").beginObject()
+                .field("address", "sender" + index % 50 + "@example.com").endObject().endObject();
+        if (withBody) {
+            json.name("body").beginObject().field("contentType", "html").field("content", body).endObject();
+            json.name("uniqueBody").beginObject().field("contentType", "html").field("content", body).endObject();
+        }
+        return json.endObject().toString();
+    }
+
+    private static int id(String path) {
+        Matcher matcher = MESSAGE.matcher(path);
+        if (!matcher.find() || !matcher.group(1).startsWith("msg-")) {
+            return 0;
+        }
+        return Integer.parseInt(matcher.group(1).substring("msg-".length()));
+    }
+
+    private Reply delayed(Reply reply) {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return reply;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
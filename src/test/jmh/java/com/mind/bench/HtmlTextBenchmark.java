@@ -0,0 +1,49 @@
+package com.mind.bench;
+
+import com.mind.mail.HtmlText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTML to plain text conversion of typical mail bodies, as done for {@code body_format: text}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlTextBenchmark {
+
+    @Param({ "4096", "65536" })
+    int bytes;
+
+    private String html;
+
+    @Setup
+    public void setUp() {
+        String paragraph = "<div class=\"x_MsoNormal\"><span style=\"font-size:11pt\">Thanks for the update &amp; "
+                + "the notes from Tuesday&#8217;s call.</span><br></div>\n<p>&nbsp;</p>\n";
+        StringBuilder body = new StringBuilder("<html><head><style>p{margin:0}</style></head><body>");
+        while (body.length() < bytes) {
+            body.append(paragraph);
+        }
+        html = body.append("</body></html>").toString();
+    }
+
+    @Benchmark
+    public String toPlainText() {
+        return HtmlText.toPlainText(html);
+    }
+}
@@ -0,0 +1,97 @@
+package com.mind.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent MCP clients calling one tool in a loop, reporting latency percentiles and throughput.
+ *
+ * Each client opens its own session and calls the tool back to back. Calls that finish during
+ * the warm-up period are not counted. Start {@link GraphStubServer} and the server in the
+ * {@code bench} profile first:
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.mind.bench.LoadDriver \
+ *     -Dbench.args="--clients 50 --seconds 30 --tool get_recent_emails --arguments '{\"count\":10}'"
+ * </pre>
+ */
+public final class LoadDriver {
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Options.parse(args);
+        URI endpoint = URI.create(options.getOrDefault("url", "https://localhost:8443/mcp"));
+        int clients = Options.integer(options, "clients", 50);
+        long warmupNanos = Options.integer(options, "warmup-seconds", 5) * 1_000_000_000L;
+        long measureNanos = Options.integer(options, "seconds", 30) * 1_000_000_000L;
+        String tool = options.getOrDefault("tool", "get_recent_emails");
+        String arguments = options.getOrDefault("arguments", "{}");
+
+        HttpClient http = McpClient.httpClient();
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + measureNanos;
+        List<long[]> latencies = new ArrayList<>();
+        AtomicLong errors = new AtomicLong();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                long[] recorded = new long[1 << 16];
+                latencies.add(recorded);
+                executor.submit(() -> {
+                    McpClient client = new McpClient(http, endpoint);
+                    int count = 0;
+                    try {
+                        client.initialize();
+                        while (System.nanoTime() < end) {
+                            long before = System.nanoTime();
+                            try {
+                                client.callTool(tool, arguments);
+                            } catch (IOException e) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            long after = System.nanoTime();
+                            if (before >= measureFrom && count < recorded.length - 1) {
+                                recorded[++count] = after - before;
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        System.err.println("Client failed: " + e.getMessage());
+                    }
+                    // Slot 0 holds the number of recorded calls
+                    recorded[0] = count;
+                    return null;
+                });
+            }
+        }
+
+        long[] all = latencies.stream()
+                .flatMapToLong(recorded -> Arrays.stream(recorded, 1, (int) recorded[0] + 1))
+                .sorted()
+                .toArray();
+        double seconds = measureNanos / 1e9;
+        System.out.printf("%s with %d clients over %.0f s%n", tool, clients, seconds);
+        System.out.printf("  calls %d, errors %d, throughput %.1f calls/s%n", all.length, errors.get(),
+                all.length / seconds);
+        if (all.length > 0) {
+            System.out.printf("  p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n", millis(all, 0.50),
+                    millis(all, 0.90), millis(all, 0.99), all[all.length - 1] / 1e6);
+        }
+    }
+
+    static double millis(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,122 @@
+package com.mind.bench;
+
+import com.mind.json.JsonWriter;
+import io.modelcontextprotocol.spec.ProtocolVersions;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal MCP client over Streamable HTTP for the bench drivers: one session, tool calls only.
+ *
+ * The server's certificate is self-signed, so this client trusts any certificate and skips host
+ * name checks. It is meant for a local server and nothing else.
+ */
+final class McpClient {
+
+    static {
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+    }
+
+    private static final String SESSION_HEADER = "Mcp-Session-Id";
+
+    private final HttpClient http;
+    private final URI endpoint;
+    private final AtomicLong requestIds = new AtomicLong();
+    private String sessionId;
+
+    McpClient(HttpClient http, URI endpoint) {
+        this.http = http;
+        this.endpoint = endpoint;
+    }
+
+    static HttpClient httpClient() {
+        try {
+            SSLContext ssl = SSLContext.getInstance("TLS");
+            ssl.init(null, new TrustManager[] { new TrustAll() }, null);
+            return HttpClient.newBuilder()
+                    .sslContext(ssl)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens the session: {@code initialize} followed by the {@code initialized} notification.
+     */
+    void initialize() throws IOException, InterruptedException {
+        String params = new JsonWriter().beginObject()
+                .field("protocolVersion", ProtocolVersions.MCP_2025_06_18)
+                .name("capabilities").beginObject().endObject()
+                .name("clientInfo").beginObject().field("name", "outlook-mcp-bench").field("version", "1").endObject()
+                .endObject()
+                .toString();
+        HttpResponse<String> response = post(request("initialize", params));
+        sessionId = response.headers().firstValue(SESSION_HEADER)
+                .orElseThrow(() -> new IOException("No session ID in initialize response: " + response.body()));
+        post("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}");
+    }
+
+    /**
+     * Calls a tool and returns the raw response body.
+     *
+     * @throws IOException if the call failed or the tool reported an error
+     */
+    String callTool(String name, String argumentsJson) throws IOException, InterruptedException {
+        String params = "{\"name\":" + JsonWriter.quote(name) + ",\"arguments\":" + argumentsJson + "}";
+        HttpResponse<String> response = post(request("tools/call", params));
+        String body = response.body();
+        if (response.statusCode() != 200 || !body.contains("\"result\"") || body.contains("\"isError\":true")) {
+            throw new IOException("Tool call " + name + " failed with " + response.statusCode() + ": "
+                    + body.substring(0, Math.min(body.length(), 300)));
+        }
+        return body;
+    }
+
+    private String request(String method, String paramsJson) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + requestIds.incrementAndGet() + ",\"method\":" + JsonWriter.quote(method)
+                + ",\"params\":" + paramsJson + "}";
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json, text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (sessionId != null) {
+            request.header(SESSION_HEADER, sessionId);
+            request.header("MCP-Protocol-Version", ProtocolVersions.MCP_2025_06_18);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static final class TrustAll implements X509TrustManager {
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}